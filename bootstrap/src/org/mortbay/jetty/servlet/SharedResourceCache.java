@@ -0,0 +1,98 @@
+package org.mortbay.jetty.servlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mortbay.io.Buffer;
+import org.mortbay.jetty.MimeTypes;
+import org.mortbay.resource.Resource;
+import org.mortbay.resource.ResourceFactory;
+
+import runjettyrun.StaticContentCache;
+
+/**
+ * The cache of one started "default" servlet , the content is taken from
+ * {@link StaticContentCache} which keeps it between restarts.
+ *
+ * It's stopped with the servlet , which drop the buffers , the shared ones are
+ * kept by StaticContentCache only.
+ *
+ * It's only here because the NIO cache of DefaultServlet is package private ,
+ * that's the only type the servlet will use with a NIO connector.
+ *
+ * @author tony
+ */
+public class SharedResourceCache extends DefaultServlet.NIOResourceCache {
+
+	private static final long serialVersionUID = 1L;
+
+	private transient StaticContentCache shared;
+
+	/**
+	 * The content of the lookup in progress is read from disk.
+	 */
+	private transient ThreadLocal<Boolean> read = new ThreadLocal<Boolean>();
+
+	public SharedResourceCache(DefaultServlet servlet, MimeTypes mimeTypes,
+			StaticContentCache shared) {
+		servlet.super(mimeTypes);
+		this.shared = shared;
+	}
+
+	public Content lookup(String pathInContext, ResourceFactory factory)
+			throws IOException {
+		read.set(null);
+		return count(super.lookup(pathInContext, factory));
+	}
+
+	public Content lookup(String pathInContext, Resource resource)
+			throws IOException {
+		read.set(null);
+		return count(super.lookup(pathInContext, resource));
+	}
+
+	private Content count(Content content) {
+		boolean fromDisk = read.get() != null;
+		read.set(null);
+		shared.count(content != null && !fromDisk);
+		return content;
+	}
+
+	protected void fill(Content content) throws IOException {
+		Buffer buffer = shared.get(content.getResource());
+		if (buffer == null) {
+			buffer = shared.read(content.getResource());
+			read.set(Boolean.TRUE);
+		}
+		content.setBuffer(buffer);
+	}
+
+	/**
+	 * Drop the content of a changed file.
+	 */
+	public void invalidate(File file) {
+		List<Content> changed = new ArrayList<Content>();
+		if (_cache == null) {
+			return;
+		}
+		// the same lock as lookup() , which change the map too.
+		synchronized (_cache) {
+			for (Object value : _cache.values()) {
+				Content content = (Content) value;
+				try {
+					File f = content.getResource().getFile();
+					if (f != null && StaticContentCache.sameFile(file, f)) {
+						changed.add(content);
+					}
+				} catch (IOException e) {
+					// not a file , ignore it.
+				}
+			}
+			for (Content content : changed) {
+				content.invalidate();
+			}
+		}
+	}
+}
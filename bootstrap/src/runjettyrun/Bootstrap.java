@@ -21,28 +21,37 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
 import java.net.DatagramSocket;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.rmi.registry.LocateRegistry;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
 
 import org.mortbay.jetty.Server;
 import org.mortbay.jetty.nio.SelectChannelConnector;
 import org.mortbay.jetty.security.SslSocketConnector;
 import org.mortbay.jetty.webapp.WebAppContext;
+import org.mortbay.management.MBeanContainer;
 import org.mortbay.resource.FileResource;
 import org.mortbay.resource.Resource;
-import org.mortbay.resource.ResourceCollection;
-import org.mortbay.util.Scanner;
 import org.mortbay.xml.XmlConfiguration;
 
+import runjettyrun.scanner.HotSwapper;
 import runjettyrun.scanner.RJRFileChangeListener;
+import runjettyrun.scanner.SnapshotScanner;
+import runjettyrun.scanner.WatchServiceScanner;
 
 /**
  * Started up by the plugin's runner. Starts Jetty.
@@ -53,7 +62,24 @@ public class Bootstrap {
 
 	private static Server server;
 
-	private static WebAppContext web;
+	private static WebappHolder webapp;
+
+	/**
+	 * One of them is running if the scanner is enabled , they're replaced on
+	 * reload.
+	 */
+	private static WatchServiceScanner watchServiceScanner;
+	private static SnapshotScanner snapshotScanner;
+
+	/**
+	 * Agent entry when the bootstrap jar is given as -javaagent ,
+	 * we keep the Instrumentation to redefine changed classes in place.
+	 *
+	 * @see HotSwapper
+	 */
+	public static void premain(String agentArgs, Instrumentation inst) {
+		HotSwapper.setInstrumentation(inst);
+	}
 
 	/**
 	 * Main function, starts the jetty server.
@@ -61,14 +87,25 @@ public class Bootstrap {
 	 * @param args
 	 */
 	public static void main(String[] args) throws Exception {
+		// a standby JVM wait here until the plugin send the configs of a launch.
+		if (Integer.getInteger("rjrstandby") != null) {
+			Standby.await(Integer.getInteger("rjrstandby"), System.getProperty(
+					"rjrstandbykey", ""));
+		}
+
 		System.err.println("Running Jetty 6.1.26");
 
 		final Configs configs = new Configs();
 
 		configs.validation();
 
+		BytecodeCache.configure(configs.getBytecodeCacheSize());
+		StaticContentCache.configure(configs.getStaticCacheSize());
+
 		server = new Server();
 
+		initJMX(server, configs);
+
 		initConnnector(server, configs);
 
 		initWebappContext(server,configs);
@@ -88,13 +125,15 @@ public class Bootstrap {
 
 		// configureScanner
 		if (configs.getEnablescanner())
-			initScanner(web, configs);
+			initScanner(webapp, configs);
 
 		initEclipseListener(configs);
 		initCommandListener(configs);
 
 		try {
 			server.start();
+			webapp.precompileJsps();
+			webapp.warmUp();
 			server.join();
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -125,6 +164,10 @@ public class Bootstrap {
 	 *  so we are going to supprot following command after 1.3
 	 *
 	 *  "restart" or "r"  : restart the server like what scanner do , it's case-insensitive.
+	 *  "history" or "h" : print the time of every phase of last restarts.
+	 *  "config key=value" or "config key" : set or clear a rjr system property , it's sent by the plugin.
+	 *  "reload" : build the webapp and scanner again from the rjr system properties ,
+	 *            the plugin send it with the configs when it relaunch on the same JVM.
 	 *  "quit" or "q" or "exit" : shutdown the server.
 	 *
 	 *  Actually I don't think this is a common issue , it should be some "debugging" case,
@@ -158,22 +201,30 @@ public class Bootstrap {
 									|| "restart".equalsIgnoreCase(inputStr)
 							){
 								try{
-									System.err.println("Stopping webapp ...");
-									web.stop();
-
-									if (configs.getWebAppClassPath() != null) {
-										ProjectClassLoader loader = new ProjectClassLoader(web,
-												configs.getWebAppClassPath(),configs.getExcludedclasspath(), false);
-										web.setClassLoader(loader);
-									}
-									System.err.println("Restarting webapp ...");
-									web.start();
-									System.err.println("Restart completed.");
+									webapp.restart("console", System.currentTimeMillis());
 								} catch (Exception e) {
 									System.err
 									.println("Error reconfiguring/restarting webapp after change in watched files");
 									e.printStackTrace();
 								}
+							}else if("h".equalsIgnoreCase(inputStr)
+									|| "history".equalsIgnoreCase(inputStr)
+							){
+								List<RestartRecord> history = RunJettyRunStats.getInstance().getHistory();
+								System.err.println("Last " + history.size() + " restarts (ms):");
+								for (RestartRecord record : history) {
+									System.err.println(record);
+								}
+							}else if(inputStr.startsWith("config ")){
+								config(inputStr.substring("config ".length()));
+							}else if("reload".equalsIgnoreCase(inputStr)){
+								try{
+									reload();
+								} catch (Exception e) {
+									System.err
+									.println("Error reloading webapp with the new configs");
+									e.printStackTrace();
+								}
 							}
 
 						}
@@ -191,6 +242,56 @@ public class Bootstrap {
 		commandListener.start();
 
 	}
+	/**
+	 * Set or clear a rjr system property , the webapp take it on reload.
+	 *
+	 * @param entry
+	 *            key=value , or key only to clear it.
+	 */
+	private static void config(String entry) {
+		int eq = entry.indexOf('=');
+		String key = eq < 0 ? entry.trim() : entry.substring(0, eq).trim();
+		if (!key.startsWith("rjr")) {
+			System.err.println("Ignored config:" + key);
+			return;
+		}
+		if (eq < 0) {
+			System.clearProperty(key);
+		} else {
+			System.setProperty(key, entry.substring(eq + 1));
+		}
+	}
+
+	/**
+	 * The plugin relaunch on this JVM , only the configs of webapp are
+	 * changed , so the context and scanner are built again from them while the
+	 * server keep running.
+	 */
+	private static synchronized void reload() throws Exception {
+		Configs configs = new Configs();
+		if (configs.getContext() == null || configs.getWebAppDir() == null) {
+			System.err.println("Can't reload without -Drjrcontext and -Drjrwebapp.");
+			return;
+		}
+		System.err.println("Reloading webapp , context path:"
+				+ configs.getContext());
+		stopScanner();
+		webapp.reload(configs);
+		if (configs.getEnablescanner())
+			initScanner(webapp, configs);
+	}
+
+	private static void stopScanner() {
+		if (watchServiceScanner != null) {
+			watchServiceScanner.stop();
+			watchServiceScanner = null;
+		}
+		if (snapshotScanner != null) {
+			snapshotScanner.stop();
+			snapshotScanner = null;
+		}
+	}
+
 	private static void initEclipseListener(final Configs configs){
 		//init eclipse hook
 		if(configs.getEclipseListenerPort() != -1 ){
@@ -243,15 +344,90 @@ public class Bootstrap {
 
 	private static void initWebappContext(Server server,Configs configs)
 		throws IOException, URISyntaxException {
-		web = new WebAppContext();
+		WebAppContext web = createWebappContext(configs, true);
+		webapp = new WebappHolder(web, configs);
+		server.addHandler(webapp);
+
+		if (configs.getWarmUpFile() != null && configs.getPort() != null) {
+			final WarmUp warmUp = new WarmUp(new File(configs.getWarmUpFile()),
+					configs.getWarmUpUrls(), configs.getWarmUpThreads(),
+					configs.getPort());
+			webapp.setWarmUp(warmUp);
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					warmUp.save();
+				}
+			});
+		}
+
+		if (configs.getWorkDir() == null
+				&& (configs.getPrecompileJsps() || configs.getSwapContextOnRestart())) {
+			// Jetty don't delete the temp directory on stop if it's given
+			// and existed , so the compiled JSPs are kept between restarts ,
+			// and a swapped context can take it over from the old one.
+			File tmp = new File(System.getProperty("java.io.tmpdir"),
+					"rjr-jsp-" + configs.getPort());
+			tmp.mkdirs();
+			web.setTempDirectory(tmp);
+		}
+		if (configs.getPrecompileJsps()) {
+			webapp.setJspPrecompiler(new JspPrecompiler(configs,
+					configs.getPrecompileThreads()));
+		}
+
+		RunJettyRunStats.getInstance().setHistorySize(configs.getRestartHistorySize());
+		try {
+			RunJettyRunStats.getInstance().register(webapp);
+		} catch (Exception e) {
+			System.err.println("Can't register the MBean of run-jetty-run:" + e);
+		}
+	}
+
+	/**
+	 * Register the server , connectors , thread pool and handlers as MBeans
+	 * (they're registered when they're added to server) , and open a JMX
+	 * connector if the port is given.
+	 */
+	private static void initJMX(Server server, Configs configs) {
+		try {
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			MBeanContainer container = new MBeanContainer(mbeanServer);
+			server.getContainer().addEventListener(container);
+			container.start();
+
+			if (configs.getJmxPort() > 0) {
+				LocateRegistry.createRegistry(configs.getJmxPort());
+				JMXServiceURL url = new JMXServiceURL(
+						"service:jmx:rmi:///jndi/rmi://localhost:"
+								+ configs.getJmxPort() + "/jmxrmi");
+				JMXConnectorServer connector = JMXConnectorServerFactory
+						.newJMXConnectorServer(url, null, mbeanServer);
+				connector.start();
+				System.err.println("JMX connector:" + url);
+			}
+		} catch (Exception e) {
+			System.err.println("Can't init JMX:" + e);
+		}
+	}
+
+	/**
+	 * Build the webapp context from the configs , it's also used to build a
+	 * new context when we swap contexts on restart.
+	 * @param logger print the settings or not
+	 */
+	static WebAppContext createWebappContext(Configs configs, boolean logger)
+		throws IOException, URISyntaxException {
+		WebAppContext web = new WebAppContext();
 
 		if (configs.getParentLoaderPriority()) {
-			System.err.println("ParentLoaderPriority enabled");
+			if (logger)
+				System.err.println("ParentLoaderPriority enabled");
 			web.setParentLoaderPriority(true);
 		}
 
 		web.setContextPath(configs.getContext());
-		System.err.println("Context path:"+configs.getContext());
+		if (logger)
+			System.err.println("Context path:"+configs.getContext());
 		web.setWar(configs.getWebAppDir());
 
 		/**
@@ -261,12 +437,20 @@ public class Bootstrap {
 		if (configurationClasses.size() != 0) {
 			web.setConfigurationClasses(configurationClasses.toArray(new String[0]));
 
-			for (String conf : configurationClasses)
-				System.err.println("Enable config class:" + conf);
+			if (logger)
+				for (String conf : configurationClasses)
+					System.err.println("Enable config class:" + conf);
 
 		}
 
 
+		// the descriptors and TLDs are parsed again only if they're changed.
+		if (configs.getDescriptorCache()) {
+			DescriptorCache.getInstance().enable();
+			web.setConfigurationClasses(DescriptorCache
+					.getConfigurationClasses(web.getConfigurationClasses()));
+		}
+
 		// Fix issue 7, File locking on windows/Disable Jetty's locking of
 		// static files
 		// http://code.google.com/p/run-jetty-run/issues/detail?id=7
@@ -286,48 +470,50 @@ public class Bootstrap {
 				"false"));
 
 		if (configs.getWebAppClassPath() != null) {
-			ProjectClassLoader loader = new ProjectClassLoader(web,
-					configs.getWebAppClassPath(),configs.getExcludedclasspath());
+			ProjectClassLoader loader = ProjectClassLoader.create(web,
+					configs, logger);
 			web.setClassLoader(loader);
 		}
 
+		// the classes of last start are loaded on a few threads while it starts.
+		if (configs.getClassOrderFile() != null) {
+			web.addLifeCycleListener(new ClassPrefetcher(new File(configs
+					.getClassOrderFile()), configs.getPrefetchThreads()));
+		}
 
-		List<Resource> resources = new ArrayList<Resource>();
 
 		URL urlWebapp = new File(configs.getWebAppDir()).toURI().toURL();
 		Resource webapp = new FileResource(urlWebapp);
-		resources.add(webapp);
 
-		Map<String,String> map = configs.getResourceMap();
-		for(String key : map.keySet()){
-/*
- * 			URL url = new File(map.get(key)).toURI().toURL();
-			Resource resource;
-			try {
-				resource = new FileResource(url);
-				final ResourceHandler handler = new ResourceHandler();
-				handler.setBaseResource(resource);
-				handler.setServer(server);
-				handler.setContextPath(key);
-				web.addHandler(handler);
-			} catch (URISyntaxException e) {
-				e.printStackTrace();
-			}
+		// the linked resource folders are mapped by a trie , one lookup per request.
+		LinkedResourceCollection webAppDirResources = new LinkedResourceCollection(
+				webapp, configs.getResourceMap());
+		webAppDirResources.setCacheTTL(configs.getResourceCacheTTL());
+        web.setBaseResource(webAppDirResources);
 
- */
-			resources.add(new VirtualResource(webapp,"/"+key,map.get(key)));
-//			final WebAppContext js = new WebAppContext();
-//			js.setContextPath(key);
-//			js.setResourceBase(map.get(key)); // or whatever the correct path is in your case
-//			js.setParentLoaderPriority(true);
-//			server.addHandler(js);
+		// the compiled JSPs are kept between launches.
+		if (configs.getWorkDir() != null) {
+			File workDir = WorkDirectory.prepare(configs);
+			if (logger)
+				System.err.println("Work directory:" + workDir);
+			web.setTempDirectory(workDir);
 		}
 
-		ResourceCollection webAppDirResources = new ResourceCollection();
-		webAppDirResources.setResources(resources.toArray(new Resource[0]));
-        web.setBaseResource(webAppDirResources);
+		// the static content stay in off-heap memory between restarts.
+		StaticContentCache.install(web);
+
+		// to tell descriptors , listeners and servlets apart in restart time.
+		web.setServletHandler(new TimedServletHandler());
 
-		server.addHandler(web);
+		// the sessions are saved when the webapp is stopped , and restored.
+		if (configs.getSessionStore() != null) {
+			if (logger)
+				System.err.println("Session store:" + configs.getSessionStore());
+			web.getSessionHandler().setSessionManager(
+					new PersistentSessionManager(new File(configs.getSessionStore())));
+		}
+
+		return web;
 	}
 
 	private static void initConnnector(Server server, Configs configObj) {
@@ -336,6 +522,8 @@ public class Bootstrap {
 		//Don't set any host , or the port detection will failed. -_-#
 		//connector.setHost("127.0.0.1");
 		connector.setPort(configObj.getPort());
+		// the request and connection counts for JMX.
+		connector.setStatsOn(true);
 
 		if (configObj.getEnablessl() && configObj.getSslport() != null){
 			if (!available(configObj.getSslport())) {
@@ -420,11 +608,11 @@ public class Bootstrap {
 
 	/**
 	 * add source scanner to restart server when source change
-	 * @param web
+	 * @param webapp
 	 * @param webAppClassPath
 	 * @param scanIntervalSeconds
 	 */
-	private static void initScanner(final WebAppContext web,
+	private static void initScanner(final WebappHolder webapp,
 			final Configs config ) {
 
 		int scanIntervalSeconds = config.getScanIntervalSeconds();
@@ -441,16 +629,43 @@ public class Bootstrap {
 			}
 		}
 
-		// startScanner
-		Scanner scanner = new Scanner();
+		RJRFileChangeListener listener = new RJRFileChangeListener(webapp,config);
+
+		/*
+		 * Prefer the file system notification , walking all the files every
+		 * interval is expensive for a big workspace.
+		 * The polling scanner is still there for the file system or JVM which
+		 * doesn't support it (ex. Java 6 , some network drives).
+		 */
+		if (!config.getPollingScanner() && WatchServiceScanner.isSupported()) {
+			WatchServiceScanner watcher = new WatchServiceScanner(scanList);
+			watcher.addListener(listener);
+			try {
+				watcher.start();
+				watchServiceScanner = watcher;
+				System.err.println("Starting scanner with file system notification.");
+				return;
+			} catch (Exception e) {
+				System.err.println("File system notification is not available ("
+						+ e + "), fall back to polling scanner.");
+			}
+		}
+
+		// startScanner , the snapshot let us skip stating the unchanged folders.
+		File snapshot = null;
+		if (config.getScanSnapshot() != null) {
+			snapshot = new File(config.getScanSnapshot());
+		}
+		SnapshotScanner scanner = new SnapshotScanner(scanList, snapshot);
 		scanner.setScanInterval(scanIntervalSeconds);
-		scanner.setScanDirs(scanList);
-		scanner.setRecursive(true);
-		scanner.setReportExistingFilesOnStartup(true);
-		scanner.addListener(new RJRFileChangeListener(web,config));
+		scanner.addListener(listener);
+
+		// we need one more scan without changes to know the build is done.
+		listener.setMinimumQuietPeriod(scanIntervalSeconds * 1000L + 500);
 		System.err.println("Starting scanner at interval of "
 				+ scanIntervalSeconds + " seconds.");
 		scanner.start();
+		snapshotScanner = scanner;
 	}
 
 
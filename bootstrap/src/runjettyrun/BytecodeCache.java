@@ -0,0 +1,195 @@
+package runjettyrun;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Manifest;
+
+/**
+ * Keep the class files of the jars in webapp classpath for the whole JVM,
+ * so a ProjectClassLoader built for restart don't need to open and inflate
+ * the jars again , only our output folders are read from the disk.
+ *
+ * The bytes are kept in direct buffers (off-heap) , so they don't make the
+ * heap bigger , and the class is defined from the buffer directly.
+ *
+ * A jar is identified by its path , last modified time and size, if any of
+ * them changed , we take it as a new jar. The cache is never compacted ,
+ * when it's full , all the jars are dropped and we start over.
+ *
+ * Signed jars are not cached since we will lose the signers.
+ *
+ * @author tony
+ */
+public class BytecodeCache {
+
+	private static final int SLAB_SIZE = 4 * 1024 * 1024;
+
+	private static BytecodeCache instance = new BytecodeCache(64 * 1024 * 1024);
+
+	private long capacity;
+	/**
+	 * A cache smaller than {@link #SLAB_SIZE} is a single slab.
+	 */
+	private int slabSize;
+	private List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+	private ByteBuffer current;
+	private long used = 0;
+
+	private Map<String, Jar> jars = new HashMap<String, Jar>();
+
+	private long hits = 0;
+	private long misses = 0;
+
+	private BytecodeCache(long capacity) {
+		this.capacity = capacity;
+		this.slabSize = (int) Math.min(SLAB_SIZE, capacity);
+	}
+
+	public static BytecodeCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @param megabytes
+	 *            0 to disable the cache.
+	 */
+	public static void configure(int megabytes) {
+		instance = new BytecodeCache(megabytes * 1024L * 1024L);
+	}
+
+	public boolean isEnabled() {
+		return capacity > 0;
+	}
+
+	/**
+	 * @return null if the jar is not cached or it's changed.
+	 */
+	public synchronized Jar getJar(File file) {
+		Jar jar = jars.get(file.getPath());
+		if (jar == null) {
+			return null;
+		}
+		if (jar.lastModified != file.lastModified() || jar.length != file.length()) {
+			jars.remove(file.getPath());
+			return null;
+		}
+		return jar;
+	}
+
+	/**
+	 * Remember the directory of a jar we just read , the classes will be
+	 * added when they are loaded.
+	 */
+	public synchronized Jar putJar(File file, List<String> packages,
+			Set<String> names, Manifest manifest) {
+		if (!isEnabled()) {
+			return null;
+		}
+		Jar jar = new Jar(file, packages, names, manifest);
+		jars.put(file.getPath(), jar);
+		return jar;
+	}
+
+	/**
+	 * @return a read only buffer of the class file , null if it's not cached.
+	 */
+	public synchronized ByteBuffer get(Jar jar, String name) {
+		ByteBuffer buf = jar.classes.get(name);
+		if (buf == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return buf.duplicate();
+	}
+
+	public synchronized void put(Jar jar, String name, byte[] bytes) {
+		if (!isEnabled() || bytes.length > slabSize) {
+			return;
+		}
+		if (jars.get(jar.path) != jar) {
+			return; // replaced by a newer version or dropped.
+		}
+		if (current == null || current.remaining() < bytes.length) {
+			if (used + slabSize > capacity) {
+				System.err.println("Bytecode cache is full , start over. (" + this + ")");
+				clear();
+				return;
+			}
+			current = ByteBuffer.allocateDirect(slabSize);
+			slabs.add(current);
+			used += slabSize;
+		}
+
+		int start = current.position();
+		current.put(bytes);
+		ByteBuffer slice = current.duplicate();
+		slice.position(start);
+		slice.limit(start + bytes.length);
+		jar.classes.put(name, slice.slice().asReadOnlyBuffer());
+		jar.bytes += bytes.length;
+	}
+
+	public synchronized void clear() {
+		jars.clear();
+		slabs.clear();
+		current = null;
+		used = 0;
+	}
+
+	public synchronized String toString() {
+		long classes = 0;
+		long bytes = 0;
+		for (Jar jar : jars.values()) {
+			classes += jar.classes.size();
+			bytes += jar.bytes;
+		}
+		long total = hits + misses;
+		return jars.size() + " jars , " + classes + " classes , "
+				+ (bytes / 1024) + " KB in " + (used / 1024)
+				+ " KB off-heap , hit rate "
+				+ (total == 0 ? 0 : hits * 100 / total) + "% (" + hits + "/"
+				+ total + ")";
+	}
+
+	/**
+	 * The cached content of a jar.
+	 */
+	public static class Jar {
+		private String path;
+		private long lastModified;
+		private long length;
+		private List<String> packages;
+		private Set<String> names;
+		private Manifest manifest;
+		private Map<String, ByteBuffer> classes = new HashMap<String, ByteBuffer>();
+		private long bytes = 0;
+
+		private Jar(File file, List<String> packages, Set<String> names,
+				Manifest manifest) {
+			this.path = file.getPath();
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+			this.packages = packages;
+			this.names = names;
+			this.manifest = manifest;
+		}
+
+		public List<String> getPackages() {
+			return packages;
+		}
+
+		public boolean contains(String name) {
+			return names.contains(name);
+		}
+
+		public Manifest getManifest() {
+			return manifest;
+		}
+	}
+}
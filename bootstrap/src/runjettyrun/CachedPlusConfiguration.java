@@ -0,0 +1,18 @@
+package runjettyrun;
+
+import org.mortbay.jetty.plus.webapp.Configuration;
+
+/**
+ * The {@link CachedWebXmlConfiguration} of JNDI , it's used instead of
+ * WebXmlConfiguration when JNDI is enabled.
+ *
+ * @author tony
+ */
+public class CachedPlusConfiguration extends Configuration {
+
+	private static final long serialVersionUID = 1L;
+
+	public void configure(String webXml) throws Exception {
+		initialize(DescriptorCache.getInstance().parse(_xmlParser, webXml));
+	}
+}
@@ -0,0 +1,150 @@
+package runjettyrun;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.EventListener;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.mortbay.jetty.webapp.TagLibConfiguration;
+import org.mortbay.jetty.webapp.WebAppContext;
+import org.mortbay.log.Log;
+import org.mortbay.resource.Resource;
+import org.mortbay.util.Loader;
+import org.mortbay.xml.XmlParser;
+
+/**
+ * The TagLibConfiguration of Jetty , but the TLDs found in the jars and the
+ * parsed TLDs are taken from the {@link DescriptorCache} if they're not
+ * changed since the last start , we don't open every jar on every restart.
+ *
+ * @author tony
+ */
+public class CachedTagLibConfiguration extends TagLibConfiguration {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String[][] DTDS = {
+			{ "web-jsptaglib_1_1.dtd", "web-jsptaglibrary_1_1.dtd" },
+			{ "web-jsptaglib_1_2.dtd", "web-jsptaglibrary_1_2.dtd" },
+			{ "web-jsptaglib_2_0.xsd", "web-jsptaglibrary_2_0.xsd" },
+			{ "web-jsptaglibrary_1_1.dtd", "web-jsptaglibrary_1_1.dtd" },
+			{ "web-jsptaglibrary_1_2.dtd", "web-jsptaglibrary_1_2.dtd" },
+			{ "web-jsptaglibrary_2_0.xsd", "web-jsptaglibrary_2_0.xsd" } };
+
+	public void configureWebApp() throws Exception {
+		WebAppContext context = getWebAppContext();
+		DescriptorCache cache = DescriptorCache.getInstance();
+		Set<String> tlds = new LinkedHashSet<String>();
+		Set<String> jars = new HashSet<String>();
+
+		// the TLDs in web.xml are aliases.
+		if (context.getResourceAliases() != null
+				&& context.getBaseResource() != null
+				&& context.getBaseResource().exists()) {
+			for (Object value : context.getResourceAliases().values()) {
+				String location = (String) value;
+				if (location != null && location.toLowerCase().endsWith(".tld")) {
+					if (!location.startsWith("/")) {
+						location = "/WEB-INF/" + location;
+					}
+					tlds.add(context.getBaseResource().addPath(location)
+							.getURL().toString());
+				}
+			}
+		}
+
+		Resource webInf = context.getWebInf();
+		if (webInf != null) {
+			String[] contents = webInf.list();
+			for (int i = 0; contents != null && i < contents.length; ++i) {
+				if (contents[i] != null
+						&& contents[i].toLowerCase().endsWith(".tld")) {
+					tlds.add(webInf.addPath(contents[i]).getURL().toString());
+				}
+			}
+		}
+
+		String noTldAttr = context
+				.getInitParameter("org.mortbay.jetty.webapp.NoTLDJarPattern");
+		Pattern noTldPattern = noTldAttr == null ? null : Pattern
+				.compile(noTldAttr);
+
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		boolean parent = false;
+		while (loader != null) {
+			if (loader instanceof URLClassLoader) {
+				URL[] urls = ((URLClassLoader) loader).getURLs();
+				for (int i = 0; urls != null && i < urls.length; ++i) {
+					String url = urls[i].toString();
+					if (!url.toLowerCase().endsWith(".jar")) {
+						continue;
+					}
+					String jar = url.substring(url.lastIndexOf('/') + 1);
+					if (parent
+							&& ((!context.isParentLoaderPriority() && jars
+									.contains(jar)) || (noTldPattern != null && noTldPattern
+									.matcher(jar).matches()))) {
+						continue;
+					}
+					jars.add(jar);
+
+					File file = Resource.newResource(urls[i]).getFile();
+					if (file == null || !file.exists() || !file.canRead()) {
+						continue;
+					}
+					try {
+						for (String name : cache.getTlds(file)) {
+							tlds.add("jar:" + url + "!/" + name);
+						}
+					} catch (Exception e) {
+						Log.warn("Failed to read file: " + file, e);
+					}
+				}
+			}
+			loader = loader.getParent();
+			parent = true;
+		}
+
+		XmlParser parser = new XmlParser(false);
+		for (String[] dtd : DTDS) {
+			parser.redirectEntity(dtd[0], Loader.getResource(
+					TagLibConfiguration.class, "javax/servlet/jsp/resources/"
+							+ dtd[1], false));
+		}
+		parser.setXpath("/taglib/listener/listener-class");
+
+		for (String tld : tlds) {
+			try {
+				XmlParser.Node root = cache.parse(parser, tld);
+				if (root == null) {
+					Log.warn("No TLD root in {}", tld);
+					continue;
+				}
+				for (int i = 0; i < root.size(); ++i) {
+					Object o = root.get(i);
+					if (o instanceof XmlParser.Node
+							&& "listener".equals(((XmlParser.Node) o).getTag())) {
+						addListener(context, ((XmlParser.Node) o).getString(
+								"listener-class", false, true));
+					}
+				}
+			} catch (Exception e) {
+				Log.warn(e);
+			}
+		}
+	}
+
+	private static void addListener(WebAppContext context, String className) {
+		try {
+			context.addEventListener((EventListener) context.loadClass(
+					className).newInstance());
+		} catch (Throwable e) {
+			Log.warn("Could not instantiate listener " + className + ": " + e);
+			Log.debug(e);
+		}
+	}
+}
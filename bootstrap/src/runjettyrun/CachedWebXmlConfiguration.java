@@ -0,0 +1,18 @@
+package runjettyrun;
+
+import org.mortbay.jetty.webapp.WebXmlConfiguration;
+
+/**
+ * Take web.xml and webdefault.xml from the {@link DescriptorCache} if they're
+ * not changed since the last start.
+ *
+ * @author tony
+ */
+public class CachedWebXmlConfiguration extends WebXmlConfiguration {
+
+	private static final long serialVersionUID = 1L;
+
+	public void configure(String webXml) throws Exception {
+		initialize(DescriptorCache.getInstance().parse(_xmlParser, webXml));
+	}
+}
@@ -0,0 +1,374 @@
+package runjettyrun;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * An index from package (the folder part of a resource name , ex.
+ * "org/mortbay/jetty" or "META-INF/services") to the classpath entries which
+ * contain it.
+ *
+ * URLClassLoader look up every entry one by one for every class and resource,
+ * with hundreds of jars that's slow , especially for the classes which don't
+ * exist at all. Here we read the jar directory once , and only ask the jars
+ * which contain the package.
+ *
+ * Folders are not indexed since they are our output folders and may change
+ * any time, we just check the file in every folder , there are only a few of
+ * them.
+ *
+ * @author tony
+ */
+public class ClassPathIndex {
+
+	private List<Entry> entries = new ArrayList<Entry>();
+	private List<Entry> folders = new ArrayList<Entry>();
+	private Map<String, List<Entry>> packages = new HashMap<String, List<Entry>>();
+
+	/**
+	 * Add a jar or folder to the end of the classpath ,
+	 * the entries not exist are ignored.
+	 */
+	public synchronized void add(File file) throws IOException {
+		Entry entry;
+		if (file.isDirectory()) {
+			entry = new FolderEntry(file, entries.size());
+			folders.add(entry);
+		} else if (file.isFile()) {
+			JarEntries jar = new JarEntries(file, entries.size());
+			for (String pkg : jar.packages()) {
+				List<Entry> list = packages.get(pkg);
+				if (list == null) {
+					list = new ArrayList<Entry>(1);
+					packages.put(pkg, list);
+				}
+				list.add(jar);
+			}
+			entry = jar;
+		} else {
+			return;
+		}
+		entries.add(entry);
+	}
+
+	/**
+	 * The entries which contain the resource , in classpath order.
+	 */
+	public synchronized List<Entry> find(String name) {
+		List<Entry> jars = packages.get(packageOf(name));
+		List<Entry> result = new ArrayList<Entry>(1);
+		int i = 0, j = 0;
+		int jarCount = jars == null ? 0 : jars.size();
+		while (i < folders.size() || j < jarCount) {
+			Entry next;
+			if (j >= jarCount
+					|| (i < folders.size() && folders.get(i).order < jars.get(j).order)) {
+				next = folders.get(i++);
+			} else {
+				next = jars.get(j++);
+			}
+			if (next.contains(name)) {
+				result.add(next);
+			}
+		}
+		return result;
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	public synchronized int getPackageCount() {
+		return packages.size();
+	}
+
+	/**
+	 * Close the jars , they're opened again if the loader is still asked.
+	 */
+	public synchronized void close() {
+		for (Entry entry : entries) {
+			entry.close();
+		}
+	}
+
+	/**
+	 * "org/mortbay/Foo.class" and "org/mortbay/util/" are both in package
+	 * "org/mortbay".
+	 */
+	static String packageOf(String name) {
+		int end = name.length();
+		if (end > 0 && name.charAt(end - 1) == '/') {
+			end--;
+		}
+		int i = name.lastIndexOf('/', end - 1);
+		return i == -1 ? "" : name.substring(0, i);
+	}
+
+	static byte[] readFully(InputStream in, int size) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 ? size : 8192);
+			byte[] buf = new byte[8192];
+			int len;
+			while ((len = in.read(buf)) != -1) {
+				out.write(buf, 0, len);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * A jar or folder in classpath.
+	 */
+	public static abstract class Entry {
+		protected File file;
+		protected int order;
+		protected URL url;
+		protected CodeSource codeSource;
+
+		protected Entry(File file, int order) throws MalformedURLException {
+			this.file = file;
+			this.order = order;
+			this.url = file.toURI().toURL();
+			this.codeSource = new CodeSource(url, (CodeSigner[]) null);
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public URL getURL() {
+			return url;
+		}
+
+		public abstract boolean contains(String name);
+
+		/**
+		 * Read the class file or resource.
+		 *
+		 * @return null if it's not there.
+		 */
+		public abstract Content load(String name) throws IOException;
+
+		public abstract URL getResource(String name);
+
+		public abstract Manifest getManifest();
+
+		public void close() {
+		}
+	}
+
+	private static class FolderEntry extends Entry {
+
+		FolderEntry(File file, int order) throws MalformedURLException {
+			super(file, order);
+		}
+
+		public boolean contains(String name) {
+			return new File(file, name).exists();
+		}
+
+		public Content load(String name) throws IOException {
+			File f = new File(file, name);
+			if (!f.isFile()) {
+				return null;
+			}
+			return new Content(readFully(new FileInputStream(f), (int) f.length()),
+					codeSource);
+		}
+
+		public URL getResource(String name) {
+			try {
+				return new File(file, name).toURI().toURL();
+			} catch (MalformedURLException e) {
+				return null;
+			}
+		}
+
+		public Manifest getManifest() {
+			return null;
+		}
+	}
+
+	/**
+	 * A jar , the directory and class files are taken from the
+	 * {@link BytecodeCache} when it's there , the jar is only opened when we
+	 * need something not cached yet.
+	 */
+	private static class JarEntries extends Entry {
+		private JarFile jar;
+		private BytecodeCache.Jar cached;
+		private List<String> packages;
+		private Manifest manifest;
+		private boolean manifestLoaded = false;
+
+		JarEntries(File file, int order) throws IOException {
+			super(file, order);
+			BytecodeCache cache = BytecodeCache.getInstance();
+			cached = cache.getJar(file);
+			if (cached != null) {
+				packages = cached.getPackages();
+				return;
+			}
+
+			jar = new JarFile(file);
+			packages = new ArrayList<String>();
+			Set<String> names = new HashSet<String>();
+			Set<String> seen = new HashSet<String>();
+			boolean signed = false;
+			Enumeration<JarEntry> e = jar.entries();
+			while (e.hasMoreElements()) {
+				String name = e.nextElement().getName();
+				names.add(name);
+				String pkg = packageOf(name);
+				if (seen.add(pkg)) {
+					packages.add(pkg);
+				}
+				if (name.startsWith("META-INF/") && name.endsWith(".SF")) {
+					signed = true;
+				}
+			}
+			if (!signed) {
+				cached = cache.putJar(file, packages, names, getManifest());
+			}
+		}
+
+		List<String> packages() {
+			return packages;
+		}
+
+		private synchronized JarFile open() throws IOException {
+			if (jar == null) {
+				jar = new JarFile(file);
+			}
+			return jar;
+		}
+
+		public boolean contains(String name) {
+			if (cached != null) {
+				return cached.contains(name);
+			}
+			try {
+				return open().getEntry(name) != null;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		public Content load(String name) throws IOException {
+			BytecodeCache cache = BytecodeCache.getInstance();
+			if (cached != null) {
+				ByteBuffer buf = cache.get(cached, name);
+				if (buf != null) {
+					return new Content(buf, codeSource);
+				}
+			}
+
+			JarFile jar = open();
+			JarEntry entry = jar.getJarEntry(name);
+			if (entry == null || entry.isDirectory()) {
+				return null;
+			}
+			byte[] bytes = readFully(jar.getInputStream(entry), (int) entry.getSize());
+
+			// the signers are only available after the entry is read.
+			CodeSigner[] signers = entry.getCodeSigners();
+			if (signers == null) {
+				if (cached != null) {
+					cache.put(cached, name, bytes);
+				}
+				return new Content(bytes, codeSource);
+			}
+			return new Content(bytes, new CodeSource(url, signers));
+		}
+
+		public URL getResource(String name) {
+			try {
+				return new URL("jar:" + url + "!/" + name);
+			} catch (MalformedURLException e) {
+				return null;
+			}
+		}
+
+		public synchronized Manifest getManifest() {
+			if (cached != null) {
+				return cached.getManifest();
+			}
+			if (!manifestLoaded) {
+				manifestLoaded = true;
+				try {
+					manifest = open().getManifest();
+				} catch (IOException e) {
+					manifest = null;
+				}
+			}
+			return manifest;
+		}
+
+		public synchronized void close() {
+			if (jar == null) {
+				return;
+			}
+			try {
+				jar.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			jar = null;
+		}
+	}
+
+	/**
+	 * The bytes of a class file or resource , and where it's from.
+	 */
+	public static class Content {
+		private byte[] bytes;
+		private ByteBuffer buffer;
+		private CodeSource codeSource;
+
+		public Content(byte[] bytes, CodeSource codeSource) {
+			this.bytes = bytes;
+			this.codeSource = codeSource;
+		}
+
+		public Content(ByteBuffer buffer, CodeSource codeSource) {
+			this.buffer = buffer;
+			this.codeSource = codeSource;
+		}
+
+		/**
+		 * @return null if it's from the {@link BytecodeCache} , use
+		 *         {@link #getBuffer()} instead.
+		 */
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		public ByteBuffer getBuffer() {
+			return buffer;
+		}
+
+		public CodeSource getCodeSource() {
+			return codeSource;
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package runjettyrun;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mortbay.component.LifeCycle;
+import org.mortbay.jetty.webapp.WebAppContext;
+
+/**
+ * Record the classes loaded while the webapp is starting , in order , and
+ * load them on a few background threads the next time it's started , so the
+ * listeners and servlets find most of their classes already defined.
+ *
+ * The classes are kept in a file of the launch configuration with the entry
+ * (jar or folder) they're loaded from , we stop loading them as soon as a
+ * class is not in the same entry anymore , the classpath is changed.
+ *
+ * @author tony
+ */
+public class ClassPrefetcher implements LifeCycle.Listener {
+
+	private File file;
+	private int threads;
+
+	/**
+	 * The loader of the start in progress , null if we're not recording.
+	 */
+	private ProjectClassLoader loader;
+	private ExecutorService pool;
+	private volatile boolean stopped;
+	private String divergedAt;
+	private AtomicInteger next;
+	private AtomicInteger loaded;
+	private int total;
+
+	/**
+	 * @param file
+	 *            where the classes are kept between launches
+	 * @param threads
+	 *            how many classes are loaded at the same time
+	 */
+	public ClassPrefetcher(File file, int threads) {
+		this.file = file;
+		this.threads = Math.max(1, threads);
+	}
+
+	public void lifeCycleStarting(LifeCycle event) {
+		ClassLoader classLoader = ((WebAppContext) event).getClassLoader();
+		if (!(classLoader instanceof ProjectClassLoader)) {
+			return;
+		}
+		loader = (ProjectClassLoader) classLoader;
+		prefetch(read());
+		loader.startRecording();
+	}
+
+	public void lifeCycleStarted(LifeCycle event) {
+		if (loader == null) {
+			return;
+		}
+		List<String> names = loader.stopRecording();
+		stop();
+		// Jetty don't throw the exceptions of listeners , the context is started.
+		if (((WebAppContext) event).getUnavailableException() == null) {
+			save(names);
+		}
+		loader = null;
+	}
+
+	public void lifeCycleFailure(LifeCycle event, Throwable cause) {
+		if (loader == null) {
+			return;
+		}
+		loader.stopRecording();
+		stop();
+		loader = null;
+	}
+
+	public void lifeCycleStopping(LifeCycle event) {
+	}
+
+	public void lifeCycleStopped(LifeCycle event) {
+	}
+
+	private void prefetch(final List<String[]> classes) {
+		stopped = false;
+		divergedAt = null;
+		total = classes.size();
+		if (total == 0) {
+			return;
+		}
+		next = new AtomicInteger();
+		loaded = new AtomicInteger();
+		final ProjectClassLoader target = loader;
+		int count = Math.min(threads, total);
+		pool = Executors.newFixedThreadPool(count);
+		for (int i = 0; i < count; ++i) {
+			pool.execute(new Runnable() {
+				public void run() {
+					prefetch(target, classes);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Take the next class until they're all loaded , or one of them is not in
+	 * the same entry.
+	 */
+	private void prefetch(ProjectClassLoader loader, List<String[]> classes) {
+		while (!stopped) {
+			int i = next.getAndIncrement();
+			if (i >= classes.size()) {
+				return;
+			}
+			String name = classes.get(i)[0];
+			File source = loader.getSource(name);
+			if (source == null || !source.getPath().equals(classes.get(i)[1])) {
+				diverged(name);
+				return;
+			}
+			try {
+				loader.loadClass(name);
+				loaded.incrementAndGet();
+			} catch (Throwable e) {
+				diverged(name);
+				return;
+			}
+		}
+	}
+
+	private synchronized void diverged(String name) {
+		if (divergedAt == null) {
+			divergedAt = name;
+		}
+		stopped = true;
+	}
+
+	/**
+	 * The webapp is started , the classes it didn't ask for yet are not needed
+	 * anymore.
+	 */
+	private void stop() {
+		if (pool == null) {
+			return;
+		}
+		stopped = true;
+		pool.shutdown();
+		pool = null;
+		synchronized (this) {
+			System.err.println("Prefetched " + loaded.get() + " of " + total
+					+ " classes on " + Math.min(threads, total) + " threads"
+					+ (divergedAt == null ? "." : " , stopped at " + divergedAt
+							+ " , the classpath is changed."));
+		}
+	}
+
+	/**
+	 * @return the class names and the entries they're loaded from.
+	 */
+	private List<String[]> read() {
+		List<String[]> classes = new ArrayList<String[]>();
+		if (!file.isFile()) {
+			return classes;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab > 0) {
+					classes.add(new String[] { line.substring(0, tab),
+							line.substring(tab + 1) });
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Can't read the class load order:" + e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		return classes;
+	}
+
+	private void save(List<String> names) {
+		BufferedWriter writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(file), "UTF-8"));
+			for (String name : names) {
+				File source = loader.getSource(name);
+				if (source != null) {
+					writer.write(name + "\t" + source.getPath());
+					writer.newLine();
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Can't save the class load order:" + e);
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+}
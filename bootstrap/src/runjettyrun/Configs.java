@@ -2,6 +2,7 @@ package runjettyrun;
 
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -33,6 +34,28 @@ public class Configs {
 	private Boolean parentLoaderPriority;
 
 	private Boolean ignoreScanClassFile = false;
+	private Boolean pollingScanner = false;
+	private String scanSnapshot;
+	private Integer scanQuietPeriod;
+	private Integer scanMaxDelay;
+	private Integer bytecodeCacheSize;
+	private Boolean twoTierClassLoader;
+	private Integer staticCacheSize;
+	private Integer resourceCacheTTL;
+	private Boolean swapContextOnRestart;
+	private Integer restartHoldTimeout;
+	private String sessionStore;
+	private Integer jmxPort;
+	private Integer restartHistorySize;
+	private String warmUpFile;
+	private Integer warmUpUrls;
+	private Integer warmUpThreads;
+	private Boolean precompileJsps;
+	private Integer precompileThreads;
+	private String workDir;
+	private Boolean descriptorCache;
+	private String classOrderFile;
+	private Integer prefetchThreads;
 	private Boolean enablessl;
 	private Boolean needClientAuth;
 	private Boolean enableJNDI;
@@ -99,6 +122,48 @@ public class Configs {
 		resourceMapping = trimQuote(getProp("rjrResourceMapping", ""));
 
 		ignoreScanClassFile = getBooleanProp("rjrignoreScanClassFile", false);
+
+		pollingScanner = getBooleanProp("rjrpollingscanner", false);
+
+		scanSnapshot = getProp("rjrscansnapshot");
+
+		scanQuietPeriod = getIntProp("rjrscanquietperiod", 1000);
+
+		scanMaxDelay = getIntProp("rjrscanmaxdelay", 10000);
+
+		bytecodeCacheSize = getIntProp("rjrbytecodecache", 64);
+
+		twoTierClassLoader = getBooleanProp("rjrtwotierloader", false);
+
+		staticCacheSize = getIntProp("rjrstaticcache", 64);
+
+		resourceCacheTTL = getIntProp("rjrresourcecachettl", 2000);
+
+		swapContextOnRestart = getBooleanProp("rjrswapcontext", false);
+
+		restartHoldTimeout = getIntProp("rjrholdtimeout", 30000);
+
+		sessionStore = getProp("rjrsessionstore");
+
+		jmxPort = getIntProp("rjrjmxport", 0);
+
+		restartHistorySize = getIntProp("rjrrestarthistory", 20);
+
+		warmUpFile = getProp("rjrwarmupfile");
+		warmUpUrls = getIntProp("rjrwarmupurls", 50);
+		warmUpThreads = getIntProp("rjrwarmupthreads", 4);
+
+		precompileJsps = getBooleanProp("rjrprecompilejsp", false);
+		precompileThreads = getIntProp("rjrprecompilethreads", Runtime
+				.getRuntime().availableProcessors());
+
+		workDir = getProp("rjrworkdir");
+
+		descriptorCache = getBooleanProp("rjrdescriptorcache", false);
+
+		classOrderFile = getProp("rjrclassorder");
+		prefetchThreads = getIntProp("rjrprefetchthreads", Runtime
+				.getRuntime().availableProcessors());
 	}
 
 	private static String getProp(String key){
@@ -165,6 +230,29 @@ public class Configs {
 		return webAppClassPath;
 	}
 
+	/**
+	 * The included entries of webapp classpath ,
+	 * the "-y-" and "-n-" marks are handled here , excluded entries are skipped.
+	 * @return
+	 */
+	public List<String> getWebAppClassPathList() {
+		List<String> entries = new ArrayList<String>();
+		if (webAppClassPath == null) {
+			return entries;
+		}
+		String[] tokens = webAppClassPath.split(File.pathSeparator);
+		for (String entry : tokens) {
+			if (entry.startsWith("-n-") || "".equals(entry)) {
+				continue;
+			}
+			if (entry.startsWith("-y-")) {
+				entry = entry.substring(3);
+			}
+			entries.add(entry);
+		}
+		return entries;
+	}
+
 	public String getKeyPassword() {
 		return keyPassword;
 	}
@@ -373,4 +461,193 @@ public class Configs {
 	public Boolean getIgnoreScanClassFile() {
 		return ignoreScanClassFile;
 	}
+
+	/**
+	 * Force to use the polling scanner instead of the file system notification.
+	 * @return
+	 */
+	public Boolean getPollingScanner() {
+		return pollingScanner;
+	}
+
+	/**
+	 * The file to keep the polling scanner snapshot between launches,
+	 * null if we don't keep it.
+	 * @return
+	 */
+	public String getScanSnapshot() {
+		return scanSnapshot;
+	}
+
+	/**
+	 * How long (in milliseconds) the scanned files must stay unchanged
+	 * before we restart the webapp , 0 to restart right away.
+	 * @return
+	 */
+	public Integer getScanQuietPeriod() {
+		return scanQuietPeriod;
+	}
+
+	/**
+	 * The longest time (in milliseconds) a restart could be delayed by
+	 * the quiet period since the first change.
+	 * @return
+	 */
+	public Integer getScanMaxDelay() {
+		return scanMaxDelay;
+	}
+
+	/**
+	 * The megabytes of off-heap memory to keep the class files of jars
+	 * between restarts , 0 to disable it.
+	 * @return
+	 */
+	public Integer getBytecodeCacheSize() {
+		return bytecodeCacheSize;
+	}
+
+	/**
+	 * Keep the jars in a loader between restarts , only reload the
+	 * project output folders.
+	 * @return
+	 */
+	public Boolean getTwoTierClassLoader() {
+		return twoTierClassLoader;
+	}
+
+	/**
+	 * The megabytes of off-heap memory to keep the static content of webapp
+	 * between restarts , 0 to use the cache of Jetty.
+	 * @return
+	 */
+	public Integer getStaticCacheSize() {
+		return staticCacheSize;
+	}
+
+	/**
+	 * How long (in milliseconds) a resolved webapp path and its stat are
+	 * trusted before we check the folders again , 0 to disable it.
+	 * @return
+	 */
+	public Integer getResourceCacheTTL() {
+		return resourceCacheTTL;
+	}
+
+	/**
+	 * Start a new webapp context when restarting , and switch to it when it's
+	 * started , the old one keeps serving until then.
+	 * @return
+	 */
+	public Boolean getSwapContextOnRestart() {
+		return swapContextOnRestart;
+	}
+
+	/**
+	 * How long (in milliseconds) a request is held while the webapp is
+	 * restarting before it's rejected , 0 to not hold them.
+	 * @return
+	 */
+	public Integer getRestartHoldTimeout() {
+		return restartHoldTimeout;
+	}
+
+	/**
+	 * The folder to keep the sessions between restarts , null to drop them.
+	 * @return
+	 */
+	public String getSessionStore() {
+		return sessionStore;
+	}
+
+	/**
+	 * The port of JMX connector (RMI) , 0 to only register the MBeans in the
+	 * local platform MBean server.
+	 * @return
+	 */
+	public Integer getJmxPort() {
+		return jmxPort;
+	}
+
+	/**
+	 * How many restarts are kept for the "history" command.
+	 * @return
+	 */
+	public Integer getRestartHistorySize() {
+		return restartHistorySize;
+	}
+
+	/**
+	 * The file to keep the URLs replayed after restart , null to disable the
+	 * warm-up.
+	 * @return
+	 */
+	public String getWarmUpFile() {
+		return warmUpFile;
+	}
+
+	/**
+	 * How many distinct URLs are recorded for the warm-up.
+	 * @return
+	 */
+	public Integer getWarmUpUrls() {
+		return warmUpUrls;
+	}
+
+	/**
+	 * How many warm-up requests are sent at the same time.
+	 * @return
+	 */
+	public Integer getWarmUpThreads() {
+		return warmUpThreads;
+	}
+
+	/**
+	 * Compile all the JSPs after the webapp is started.
+	 * @return
+	 */
+	public Boolean getPrecompileJsps() {
+		return precompileJsps;
+	}
+
+	/**
+	 * How many JSPs are compiled at the same time.
+	 * @return
+	 */
+	public Integer getPrecompileThreads() {
+		return precompileThreads;
+	}
+
+	/**
+	 * The temp directory of webapp which is kept between launches , null to
+	 * let Jetty create one.
+	 * @return
+	 */
+	public String getWorkDir() {
+		return workDir;
+	}
+
+	/**
+	 * Keep the parsed descriptors and TLDs between restarts.
+	 * @return
+	 */
+	public Boolean getDescriptorCache() {
+		return descriptorCache;
+	}
+
+	/**
+	 * The file to keep the classes loaded while the webapp is starting , null
+	 * to disable the class prefetch.
+	 * @return
+	 */
+	public String getClassOrderFile() {
+		return classOrderFile;
+	}
+
+	/**
+	 * How many classes are prefetched at the same time.
+	 * @return
+	 */
+	public Integer getPrefetchThreads() {
+		return prefetchThreads;
+	}
 }
\ No newline at end of file
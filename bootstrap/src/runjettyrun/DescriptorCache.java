@@ -0,0 +1,228 @@
+package runjettyrun;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.mortbay.resource.Resource;
+import org.mortbay.xml.XmlConfiguration;
+import org.mortbay.xml.XmlParser;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * The parsed web.xml , webdefault.xml , jetty-env.xml , jetty-web.xml and TLDs
+ * and the TLDs found in every jar , they're kept between restarts and only
+ * parsed or scanned again if the file is changed (the time or size of the
+ * file , or the jar it's in).
+ *
+ * The configuration classes are replaced with the ones use this cache , see
+ * {@link #getConfigurationClasses(String[])} .
+ *
+ * @author tony
+ */
+public class DescriptorCache {
+
+	private static final DescriptorCache instance = new DescriptorCache();
+
+	private static final String[][] CACHED_CONFIGURATIONS = {
+			{ "org.mortbay.jetty.webapp.WebXmlConfiguration",
+					CachedWebXmlConfiguration.class.getName() },
+			{ "org.mortbay.jetty.plus.webapp.Configuration",
+					"runjettyrun.CachedPlusConfiguration" },
+			{ "org.mortbay.jetty.webapp.TagLibConfiguration",
+					CachedTagLibConfiguration.class.getName() } };
+
+	private Map<String, Entry<XmlParser.Node>> descriptors = new HashMap<String, Entry<XmlParser.Node>>();
+	private Map<String, Entry<List<String>>> jars = new HashMap<String, Entry<List<String>>>();
+
+	private long hits = 0;
+	private long misses = 0;
+
+	private boolean enabled = false;
+
+	private DescriptorCache() {
+	}
+
+	public static DescriptorCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Start to cache , the jetty.xml and jetty-env.xml parsed by
+	 * XmlConfiguration are cached from now on.
+	 */
+	public synchronized void enable() {
+		if (enabled) {
+			return;
+		}
+		enabled = true;
+		try {
+			// it's created on the first use , and shared by all XmlConfigurations.
+			new XmlConfiguration("<Configure class=\"java.lang.Object\"></Configure>");
+			Field field = XmlConfiguration.class.getDeclaredField("__parser");
+			field.setAccessible(true);
+			XmlParser parser = (XmlParser) field.get(null);
+			if (!(parser instanceof CachingParser)) {
+				field.set(null, new CachingParser(parser));
+			}
+		} catch (Exception e) {
+			System.err.println("Can't cache the XmlConfiguration files:" + e);
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Replace the configuration classes with the ones use this cache.
+	 */
+	public static String[] getConfigurationClasses(String[] classes) {
+		String[] result = new String[classes.length];
+		for (int i = 0; i < classes.length; ++i) {
+			result[i] = classes[i];
+			for (String[] cached : CACHED_CONFIGURATIONS) {
+				if (cached[0].equals(classes[i])) {
+					result[i] = cached[1];
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Parse the url by the parser , or take the one we parsed if the file is
+	 * not changed.
+	 */
+	public XmlParser.Node parse(XmlParser parser, String url)
+			throws IOException, SAXException {
+		File file = getFile(url);
+		String stamp = file == null ? null : stamp(file);
+		if (stamp == null) {
+			return parser.parse(url);
+		}
+		synchronized (this) {
+			Entry<XmlParser.Node> entry = descriptors.get(url);
+			if (entry != null && entry.stamp.equals(stamp)) {
+				hits++;
+				return entry.value;
+			}
+			misses++;
+		}
+		XmlParser.Node node = parser.parse(url);
+		synchronized (this) {
+			descriptors.put(url, new Entry<XmlParser.Node>(stamp, node));
+		}
+		return node;
+	}
+
+	/**
+	 * The entry names of TLDs in META-INF of the jar.
+	 */
+	public List<String> getTlds(File jar) throws IOException {
+		String key = jar.getAbsolutePath();
+		String stamp = stamp(jar);
+		synchronized (this) {
+			Entry<List<String>> entry = jars.get(key);
+			if (entry != null && entry.stamp.equals(stamp)) {
+				hits++;
+				return entry.value;
+			}
+			misses++;
+		}
+		List<String> tlds = new ArrayList<String>();
+		JarFile jarFile = new JarFile(jar);
+		try {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				String name = entries.nextElement().getName();
+				if (name.startsWith("META-INF/")
+						&& name.toLowerCase().endsWith(".tld")) {
+					tlds.add(name);
+				}
+			}
+		} finally {
+			jarFile.close();
+		}
+		tlds = Collections.unmodifiableList(tlds);
+		synchronized (this) {
+			jars.put(key, new Entry<List<String>>(stamp, tlds));
+		}
+		return tlds;
+	}
+
+	/**
+	 * The file of a file: url , or the jar of a jar: url.
+	 */
+	private static File getFile(String url) {
+		if (url.startsWith("jar:")) {
+			int bang = url.indexOf("!/");
+			if (bang < 0) {
+				return null;
+			}
+			url = url.substring(4, bang);
+		}
+		if (!url.startsWith("file:")) {
+			return null;
+		}
+		try {
+			return Resource.newResource(url).getFile();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static String stamp(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		return file.lastModified() + "|" + file.length();
+	}
+
+	public synchronized String toString() {
+		long total = hits + misses;
+		return descriptors.size() + " descriptors , " + jars.size()
+				+ " jars , hit rate " + (total == 0 ? 0 : hits * 100 / total)
+				+ "% (" + hits + "/" + total + ")";
+	}
+
+	private static class Entry<T> {
+		String stamp;
+		T value;
+
+		Entry(String stamp, T value) {
+			this.stamp = stamp;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * The parser of XmlConfiguration , it ask the cache first.
+	 */
+	private static class CachingParser extends XmlParser {
+		private XmlParser parser;
+
+		CachingParser(XmlParser parser) {
+			this.parser = parser;
+		}
+
+		public synchronized Node parse(String url) throws IOException,
+				SAXException {
+			return instance.parse(parser, url);
+		}
+
+		public synchronized Node parse(InputSource source) throws IOException,
+				SAXException {
+			return parser.parse(source);
+		}
+	}
+}
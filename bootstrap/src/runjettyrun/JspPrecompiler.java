@@ -0,0 +1,269 @@
+package runjettyrun;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.jasper.compiler.JspUtil;
+import org.mortbay.jetty.servlet.ServletHolder;
+import org.mortbay.jetty.webapp.WebAppContext;
+
+/**
+ * Compile all the JSPs of webapp on a few threads after it's started , instead
+ * of one by one when they're requested.
+ *
+ * The JSPs are found in the webapp directory and the linked resource folders ,
+ * each one is sent to the JSP servlet as a "jsp_precompile" request , so Jasper
+ * compile it only if the JSP or its dependencies (includes , tag files) are
+ * changed since the class is generated.
+ *
+ * @author tony
+ */
+public class JspPrecompiler {
+
+	private static final String JSP_SERVLET = "jsp";
+
+	private Configs configs;
+	private int threads;
+
+	/**
+	 * @param threads
+	 *            how many JSPs are compiled at the same time
+	 */
+	public JspPrecompiler(Configs configs, int threads) {
+		this.configs = configs;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Compile the JSPs of the webapp , and wait them to finish.
+	 *
+	 * @return how long it took , in milliseconds.
+	 */
+	public long compile(final WebAppContext web) {
+		ServletHolder holder = web.getServletHandler().getServlet(JSP_SERVLET);
+		if (holder == null) {
+			return 0;
+		}
+		final Servlet servlet;
+		try {
+			servlet = holder.getServlet();
+		} catch (Exception e) {
+			System.err.println("Can't precompile JSPs , the JSP servlet is not available:" + e);
+			return 0;
+		}
+
+		Map<String, File> jsps = findJsps();
+		if (jsps.size() == 0) {
+			return 0;
+		}
+		final File scratchDir = WorkDirectory.getScratchDir(web);
+
+		long start = System.currentTimeMillis();
+		System.err.println("Precompiling " + jsps.size() + " JSPs ...");
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads,
+				jsps.size()));
+		int compiled = 0;
+		int failed = 0;
+		try {
+			List<Future<Result>> results = new ArrayList<Future<Result>>();
+			for (final String uri : jsps.keySet()) {
+				results.add(pool.submit(new Callable<Result>() {
+					public Result call() {
+						return compile(web, servlet, uri, scratchDir);
+					}
+				}));
+			}
+			for (Future<Result> future : results) {
+				try {
+					Result result = future.get();
+					if (result.failure != null) {
+						failed++;
+					} else if (result.compiled) {
+						compiled++;
+					}
+					System.err.println("\t" + result);
+				} catch (Exception e) {
+					failed++;
+					System.err.println("\t" + e);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		long time = System.currentTimeMillis() - start;
+		System.err.println("Precompiled JSPs in " + time + " ms: " + compiled
+				+ " compiled , " + (jsps.size() - compiled - failed)
+				+ " up to date , " + failed + " failed.");
+		return time;
+	}
+
+	private Result compile(WebAppContext web, Servlet servlet, String uri,
+			File scratchDir) {
+		Result result = new Result(uri);
+		File classFile = getClassFile(scratchDir, uri);
+		long before = classFile.lastModified();
+
+		long start = System.currentTimeMillis();
+		Thread thread = Thread.currentThread();
+		ClassLoader old = thread.getContextClassLoader();
+		// Jasper take the webapp classes and TLDs from the context loader.
+		thread.setContextClassLoader(web.getClassLoader());
+		try {
+			servlet.service(request(uri), response(result));
+		} catch (Throwable e) {
+			result.failure = e;
+		} finally {
+			thread.setContextClassLoader(old);
+		}
+		result.time = System.currentTimeMillis() - start;
+		result.compiled = classFile.lastModified() != before;
+		return result;
+	}
+
+	/**
+	 * Where Jasper put the class of JSP , see
+	 * JspCompilationContext.getServletPackageName() .
+	 */
+	private static File getClassFile(File scratchDir, String uri) {
+		int slash = uri.lastIndexOf('/');
+		String pkg = WorkDirectory.JSP_PACKAGE;
+		if (slash > 0) {
+			pkg += "." + JspUtil.makeJavaPackage(uri.substring(1, slash));
+		}
+		String className = JspUtil.makeJavaIdentifier(uri.substring(slash + 1));
+		return new File(scratchDir, pkg.replace('.', File.separatorChar)
+				+ File.separator + className + ".class");
+	}
+
+	/**
+	 * The JSPs in webapp directory and linked resource folders , by their
+	 * URIs. The webapp directory win if a JSP is in both.
+	 */
+	private Map<String, File> findJsps() {
+		Map<String, File> jsps = new TreeMap<String, File>();
+		for (Map.Entry<String, String> entry : configs.getResourceMap()
+				.entrySet()) {
+			String path = entry.getKey();
+			if (!path.startsWith("/")) {
+				path = "/" + path;
+			}
+			if (!path.endsWith("/")) {
+				path += "/";
+			}
+			findJsps(new File(entry.getValue()), path, jsps);
+		}
+		findJsps(new File(configs.getWebAppDir()), "/", jsps);
+		return jsps;
+	}
+
+	private static void findJsps(File folder, String path, Map<String, File> jsps) {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory()) {
+				// skip .svn and the classes and jars , no JSPs there.
+				if (!name.startsWith(".")
+						&& !("/WEB-INF/".equals(path) && ("classes".equals(name) || "lib"
+								.equals(name)))) {
+					findJsps(file, path + name + "/", jsps);
+				}
+			} else if (name.endsWith(".jsp") || name.endsWith(".jspx")) {
+				jsps.put(path + name, file);
+			}
+		}
+	}
+
+	/**
+	 * A "jsp_precompile" request of the uri , it's all Jasper ask for.
+	 */
+	private static HttpServletRequest request(final String uri) {
+		return (HttpServletRequest) Proxy.newProxyInstance(
+				JspPrecompiler.class.getClassLoader(),
+				new Class<?>[] { HttpServletRequest.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						String name = method.getName();
+						if ("getServletPath".equals(name)
+								|| "getRequestURI".equals(name)) {
+							return uri;
+						} else if ("getQueryString".equals(name)) {
+							return "jsp_precompile=true";
+						} else if ("getParameter".equals(name)) {
+							return "jsp_precompile".equals(args[0]) ? "true"
+									: null;
+						} else if ("getMethod".equals(name)) {
+							return "GET";
+						}
+						return defaultValue(method);
+					}
+				});
+	}
+
+	/**
+	 * Jasper report the missing JSP and compile errors by sendError().
+	 */
+	private static HttpServletResponse response(final Result result) {
+		return (HttpServletResponse) Proxy.newProxyInstance(
+				JspPrecompiler.class.getClassLoader(),
+				new Class<?>[] { HttpServletResponse.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if ("sendError".equals(method.getName())) {
+							result.failure = new Exception(args[0]
+									+ (args.length > 1 ? " " + args[1] : ""));
+						}
+						return defaultValue(method);
+					}
+				});
+	}
+
+	private static Object defaultValue(Method method) {
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return Boolean.FALSE;
+		} else if (type == int.class) {
+			return Integer.valueOf(0);
+		} else if (type == long.class) {
+			return Long.valueOf(0);
+		}
+		return null;
+	}
+
+	private static class Result {
+		String uri;
+		long time;
+		boolean compiled;
+		Throwable failure;
+
+		Result(String uri) {
+			this.uri = uri;
+		}
+
+		public String toString() {
+			if (failure != null) {
+				return "failed " + time + " ms " + uri + " : " + failure;
+			}
+			return (compiled ? "compiled " : "up to date ") + time + " ms "
+					+ uri;
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package runjettyrun;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mortbay.resource.Resource;
+import org.mortbay.resource.ResourceCollection;
+
+/**
+ * The base resource of webapp , the webapp folder plus the linked resource
+ * folders (rjrResourceMapping).
+ *
+ * ResourceCollection asks every member for every path , and every
+ * VirtualResource fall back to the webapp folder when the path is not under
+ * its context path , so the webapp folder is checked again and again for one
+ * request.
+ *
+ * Here we keep the mapping in a trie of path segments , so we find the linked
+ * folder by the longest mapped prefix with one walk , and only ask the webapp
+ * folder and that folder. (Same as ResourceCollection , the webapp folder
+ * wins if both have the file , and the folders are merged.)
+ *
+ * The resolved paths and the misses (404 , welcome files probing) are cached
+ * with their exists / isDirectory / lastModified / length for a while , so
+ * the same path doesn't stat the folders again. The cache is flushed when the
+ * scanner see a file changed , added or removed , the TTL covers the folders
+ * we don't scan.
+ *
+ * @author tony
+ */
+public class LinkedResourceCollection extends ResourceCollection {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int MAX_CACHED_PATHS = 10000;
+
+	private Resource webapp;
+	private Node root = new Node();
+
+	private long cacheTTL = 0;
+	private Map<String, CachedResource> resolved = new LinkedHashMap<String, CachedResource>(
+			256, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(
+				Map.Entry<String, CachedResource> eldest) {
+			return size() > MAX_CACHED_PATHS;
+		}
+	};
+
+	/**
+	 * @param mapping
+	 *            context sub path to real folder , see
+	 *            {@link Configs#getResourceMap()}
+	 */
+	public LinkedResourceCollection(Resource webapp, Map<String, String> mapping)
+			throws MalformedURLException, IOException, URISyntaxException {
+		this.webapp = webapp;
+
+		List<Resource> resources = new ArrayList<Resource>();
+		resources.add(webapp);
+		for (Map.Entry<String, String> entry : mapping.entrySet()) {
+			String contextPath = entry.getKey();
+			if (!contextPath.startsWith("/")) {
+				contextPath = "/" + contextPath;
+			}
+			VirtualResource resource = new VirtualResource(webapp, contextPath,
+					entry.getValue());
+			resources.add(resource);
+			put(contextPath, resource);
+		}
+		setResources(resources.toArray(new Resource[resources.size()]));
+	}
+
+	/**
+	 * @param ttl
+	 *            how long (in milliseconds) a resolved path is trusted , 0 to
+	 *            disable the cache.
+	 */
+	public void setCacheTTL(long ttl) {
+		this.cacheTTL = ttl;
+		flushCache();
+	}
+
+	/**
+	 * Forget all the resolved paths , call it when files are changed , added
+	 * or removed.
+	 */
+	public void flushCache() {
+		synchronized (resolved) {
+			resolved.clear();
+		}
+	}
+
+	private void put(String path, VirtualResource resource) {
+		Node node = root;
+		for (String segment : path.split("/")) {
+			if (segment.length() == 0) {
+				continue;
+			}
+			Node child = node.children.get(segment);
+			if (child == null) {
+				child = new Node();
+				node.children.put(segment, child);
+			}
+			node = child;
+		}
+		node.resource = resource;
+	}
+
+	/**
+	 * Find the linked folder of the longest mapped prefix.
+	 *
+	 * @return null if the path is not under any linked folder.
+	 */
+	public Resource findLinked(String path) throws IOException {
+		Node node = root;
+		VirtualResource found = null;
+		int foundEnd = 0;
+
+		int pos = 0;
+		int length = path.length();
+		while (pos < length) {
+			while (pos < length && path.charAt(pos) == '/') {
+				pos++;
+			}
+			if (pos == length) {
+				break;
+			}
+			int end = path.indexOf('/', pos);
+			if (end == -1) {
+				end = length;
+			}
+			node = node.children.get(path.substring(pos, end));
+			if (node == null) {
+				break;
+			}
+			if (node.resource != null) {
+				found = node.resource;
+				foundEnd = end;
+			}
+			pos = end;
+		}
+
+		if (found == null) {
+			return null;
+		}
+		return found.resolve(path.substring(foundEnd));
+	}
+
+	public Resource addPath(String path) throws IOException,
+			MalformedURLException {
+		if (path == null) {
+			throw new MalformedURLException();
+		}
+		if (path.length() == 0 || "/".equals(path)) {
+			return this;
+		}
+		if (cacheTTL <= 0) {
+			return resolve(path);
+		}
+
+		long now = System.currentTimeMillis();
+		synchronized (resolved) {
+			CachedResource cached = resolved.get(path);
+			if (cached != null && now - cached.time < cacheTTL) {
+				return cached;
+			}
+		}
+		CachedResource cached = new CachedResource(resolve(path), now);
+		synchronized (resolved) {
+			resolved.put(path, cached);
+		}
+		return cached;
+	}
+
+	private Resource resolve(String path) throws IOException {
+		Resource linked = findLinked(path);
+		Resource own = webapp.addPath(path);
+		if (linked == null) {
+			return own;
+		}
+
+		if (own.exists()) {
+			if (!own.isDirectory()) {
+				return own;
+			}
+			if (linked.exists() && linked.isDirectory()) {
+				return new ResourceCollection(new Resource[] { own, linked });
+			}
+			return own;
+		}
+		return linked;
+	}
+
+	private static class Node {
+		Map<String, Node> children = new HashMap<String, Node>(4);
+		VirtualResource resource;
+	}
+
+	/**
+	 * A resolved path , the file attributes are taken when it's resolved , the
+	 * listing of a folder when it's first asked , the others are delegated.
+	 */
+	private static class CachedResource extends Resource {
+		private static final long serialVersionUID = 1L;
+
+		private Resource resource;
+		private long time;
+		private boolean exists;
+		private boolean directory;
+		private long lastModified;
+		private long length;
+		private String[] list;
+
+		CachedResource(Resource resource, long time) {
+			this.resource = resource;
+			this.time = time;
+			this.exists = resource.exists();
+			this.directory = exists && resource.isDirectory();
+			this.lastModified = exists ? resource.lastModified() : 0;
+			this.length = exists ? resource.length() : -1;
+		}
+
+		public boolean exists() {
+			return exists;
+		}
+
+		public boolean isDirectory() {
+			return directory;
+		}
+
+		public void release() {
+			resource.release();
+		}
+
+		public long lastModified() {
+			return lastModified;
+		}
+
+		public long length() {
+			return length;
+		}
+
+		public URL getURL() {
+			return resource.getURL();
+		}
+
+		public URL getAlias() {
+			return resource.getAlias();
+		}
+
+		public File getFile() throws IOException {
+			return resource.getFile();
+		}
+
+		public String getName() {
+			return resource.getName();
+		}
+
+		public InputStream getInputStream() throws IOException {
+			return resource.getInputStream();
+		}
+
+		public OutputStream getOutputStream() throws IOException,
+				SecurityException {
+			return resource.getOutputStream();
+		}
+
+		public boolean delete() throws SecurityException {
+			return resource.delete();
+		}
+
+		public boolean renameTo(Resource dest) throws SecurityException {
+			return resource.renameTo(dest);
+		}
+
+		public synchronized String[] list() {
+			if (!directory) {
+				return null;
+			}
+			if (list == null) {
+				list = resource.list();
+				if (list == null) {
+					return null;
+				}
+			}
+			return (String[]) list.clone(); // the caller may sort it.
+		}
+
+		public Resource addPath(String path) throws IOException,
+				MalformedURLException {
+			return resource.addPath(path);
+		}
+
+		public String toString() {
+			return resource.toString();
+		}
+	}
+}
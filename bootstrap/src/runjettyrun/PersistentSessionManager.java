@@ -0,0 +1,203 @@
+package runjettyrun;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionActivationListener;
+import javax.servlet.http.HttpSessionEvent;
+
+import org.mortbay.jetty.servlet.HashSessionManager;
+
+/**
+ * Keep the sessions when the webapp is restarted , they're saved to the store
+ * directory when the webapp is stopped , and restored by the new class loader
+ * when it's started.
+ *
+ * Jetty save the sessions on stop with a store directory , but fail a whole
+ * session if one attribute is not serializable , and invalidate them after
+ * that. Here we skip the attributes which can't be serialized , with a
+ * report , and the saved sessions are not invalidated.
+ *
+ * The file format is the same as HashSessionManager , so Jetty restore them.
+ *
+ * With context swap , the sessions are handed over when the new context
+ * starts , the changes in the old one after that are lost.
+ *
+ * Only the public API of the sessions is used , the time of last request is
+ * saved as the access time , and no request is in progress.
+ *
+ * @author tony
+ */
+public class PersistentSessionManager extends HashSessionManager {
+
+	private boolean handedOver = false;
+
+	public PersistentSessionManager(File storeDirectory) {
+		storeDirectory.mkdirs();
+		setStoreDirectory(storeDirectory);
+	}
+
+	/**
+	 * Save the sessions now for a new context of the same webapp , they're not
+	 * saved again or invalidated when this one is stopped.
+	 */
+	public void handOver() throws Exception {
+		saveSessions();
+		handedOver = true;
+	}
+
+	/**
+	 * The new context failed to start , we keep the sessions.
+	 */
+	public void cancelHandOver() {
+		handedOver = false;
+	}
+
+	public void doStart() throws Exception {
+		handedOver = false;
+		super.doStart();
+	}
+
+	public void doStop() throws Exception {
+		if (!handedOver) {
+			for (HttpSession session : getSessionList()) {
+				willPassivate(session);
+			}
+		}
+		super.doStop(); // it save the sessions.
+	}
+
+	protected void invalidateSessions() {
+		if (getStoreDirectory() == null) {
+			super.invalidateSessions();
+			return;
+		}
+		// they're saved , not timed out.
+		_sessions.clear();
+	}
+
+	public void saveSessions() throws Exception {
+		File dir = getStoreDirectory();
+		if (handedOver || dir == null || !dir.isDirectory()) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		int saved = 0;
+		List<String> skipped = new ArrayList<String>();
+		for (HttpSession session : getSessionList()) {
+			String id = getClusterId(session);
+			File file = new File(dir, id);
+			try {
+				save(session, id, getNodeId(session), file, skipped);
+				saved++;
+			} catch (Exception e) {
+				file.delete();
+				System.err.println("Can't save session " + id + ":" + e);
+			}
+		}
+		System.err.println("Saved " + saved + " sessions in "
+				+ (System.currentTimeMillis() - start) + " ms.");
+		if (skipped.size() > 0) {
+			System.err.println("Skipped " + skipped.size()
+					+ " session attributes which can't be serialized:");
+			for (String attr : skipped) {
+				System.err.println("\t" + attr);
+			}
+		}
+	}
+
+	public void restoreSessions() throws Exception {
+		long start = System.currentTimeMillis();
+		int before = _sessions.size();
+		super.restoreSessions();
+		int restored = _sessions.size() - before;
+		if (restored > 0) {
+			System.err.println("Restored " + restored + " sessions in "
+					+ (System.currentTimeMillis() - start) + " ms.");
+		}
+	}
+
+	private synchronized List<HttpSession> getSessionList() {
+		@SuppressWarnings("unchecked")
+		Collection<HttpSession> sessions = _sessions.values();
+		return new ArrayList<HttpSession>(sessions);
+	}
+
+	/**
+	 * Same as Session.willPassivate.
+	 */
+	private static void willPassivate(HttpSession session) {
+		HttpSessionEvent event = new HttpSessionEvent(session);
+		synchronized (session) {
+			for (Enumeration<?> e = session.getAttributeNames(); e
+					.hasMoreElements();) {
+				Object value = session.getAttribute((String) e.nextElement());
+				if (value instanceof HttpSessionActivationListener) {
+					((HttpSessionActivationListener) value)
+							.sessionWillPassivate(event);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Same as Session.save , without the attributes can't be serialized.
+	 */
+	private static void save(HttpSession session, String clusterId,
+			String nodeId, File file, List<String> skipped) throws Exception {
+		List<String> names = new ArrayList<String>();
+		List<Object> values = new ArrayList<Object>();
+		synchronized (session) {
+			for (Enumeration<?> e = session.getAttributeNames(); e
+					.hasMoreElements();) {
+				String name = (String) e.nextElement();
+				Object value = session.getAttribute(name);
+				try {
+					new ObjectOutputStream(new ByteArrayOutputStream())
+							.writeObject(value);
+				} catch (Exception ex) {
+					skipped.add(clusterId + " " + name + " ("
+							+ (value == null ? null : value.getClass().getName())
+							+ "): " + ex);
+					continue;
+				}
+				names.add(name);
+				values.add(value);
+			}
+
+			HashSessionManager.Session jetty = (HashSessionManager.Session) session;
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+			try {
+				out.writeUTF(clusterId);
+				out.writeUTF(nodeId);
+				out.writeBoolean(jetty.isIdChanged());
+				out.writeLong(session.getCreationTime());
+				out.writeLong(jetty.getCookieSetTime());
+				out.writeLong(session.getLastAccessedTime());
+				out.writeLong(session.getLastAccessedTime());
+				out.writeInt(0);
+				out.writeInt(names.size());
+				for (String name : names) {
+					out.writeUTF(name);
+				}
+				if (names.size() > 0) {
+					ObjectOutputStream oos = new ObjectOutputStream(out);
+					for (Object value : values) {
+						oos.writeObject(value);
+					}
+					oos.flush();
+				}
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
@@ -19,6 +19,16 @@ package runjettyrun;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Manifest;
 
 import org.mortbay.jetty.webapp.WebAppClassLoader;
 import org.mortbay.jetty.webapp.WebAppContext;
@@ -32,15 +42,70 @@ import org.mortbay.resource.Resource;
  * @author jsynge
  */
 public class ProjectClassLoader extends WebAppClassLoader {
+  /**
+   * how many missing class / resource names we remember.
+   */
+  private static final int MISSING_CACHE_SIZE = 10000;
+
   private boolean initialized = false;
 
+  /**
+   * We look up classes and resources with the index instead of asking every
+   * URL in the classpath one by one , the URLs are still added to super class
+   * for getURLs() (Jasper use it to compile the JSPs).
+   */
+  private ClassPathIndex index = new ClassPathIndex();
+
+  /**
+   * Frameworks keep probing for the optional classes ,
+   * remember the names we didn't find , it's a new loader after every restart.
+   */
+  private Map<String, Boolean> missing = new LinkedHashMap<String, Boolean>(256, 0.75f, true) {
+	private static final long serialVersionUID = 1L;
+
+	protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+		return size() > MISSING_CACHE_SIZE;
+	}
+  };
+
+  /**
+   * The classes asked by the thread which start the webapp , in order , see
+   * {@link ClassPrefetcher} .
+   */
+  private volatile Thread recordingThread;
+  private Set<String> recorded = new LinkedHashSet<String>();
+
+  /**
+   * how long (ms) it took to open and index every entry.
+   */
+  private Map<String, Long> entryTimes = new LinkedHashMap<String, Long>();
+
   public ProjectClassLoader(WebAppContext context, String projectClassPath,String excluded)
   throws IOException {
 	  this(context, projectClassPath,excluded, true);
   }
   public ProjectClassLoader(WebAppContext context, String projectClassPath, String excluded, boolean logger)
       throws IOException {
-    super(context);
+    this(null, context, projectClassPath, excluded, logger);
+  }
+
+  /**
+   * @param stable the loader keeps the jars between restarts , we only load
+   *        the folders when it's given , null to load everything here.
+   */
+  public ProjectClassLoader(StableClassLoader stable, WebAppContext context,
+      String projectClassPath, String excluded, boolean logger)
+      throws IOException {
+    this(stable, stable != null, context, projectClassPath, excluded, logger);
+  }
+
+  /**
+   * @param foldersOnly the jars are only added for getURLs() , not loaded here.
+   */
+  protected ProjectClassLoader(ClassLoader parent, boolean foldersOnly,
+      WebAppContext context, String projectClassPath, String excluded,
+      boolean logger) throws IOException {
+    super(parent, context);
 
     /*
      * As reported in these bugs:
@@ -67,14 +132,54 @@ public class ProjectClassLoader extends WebAppClassLoader {
 	    		if (logger) excludedString.append("Excluded entry="+ path+" \n");
 	    	}else{
 		    	if (logger) System.err.println("ProjectClassLoader: entry="+ path);
+		    	long start = System.currentTimeMillis();
 	    		super.addClassPath( path);
+	    		if (!foldersOnly || !new File(path).isFile()) {
+	    			addToIndex(new File(path));
+	    		}
+	    		entryTimes.put(path, System.currentTimeMillis() - start);
 	    	}
 	    }
 
 	    System.err.print(excludedString.toString());
+	    if (logger) {
+	    	System.err.println("ProjectClassLoader: indexed " + index.getPackageCount()
+	    			+ " packages of " + index.getEntryCount() + " entries.");
+	    }
     }
 
     initialized = true;
+    RunJettyRunStats.getInstance().loaderCreated(this);
+  }
+
+  public Map<String, Long> getEntryTimes() {
+    return entryTimes;
+  }
+
+  /**
+   * Close the jars of the index , it's called after the context of the loader
+   * is stopped. The loader of jars is closed too if it's replaced by a new
+   * one , the old contexts were the only ones using it.
+   */
+  public void closeIndex() {
+    index.close();
+    if (getParent() instanceof StableClassLoader) {
+      ((StableClassLoader) getParent()).closeIfReplaced();
+    }
+  }
+
+  /**
+   * Create the loader for webapp , with a {@link StableClassLoader} as parent
+   * if the two-tier loader is enabled.
+   */
+  public static ProjectClassLoader create(WebAppContext context, Configs configs,
+      boolean logger) throws IOException {
+    StableClassLoader stable = null;
+    if (configs.getTwoTierClassLoader()) {
+      stable = StableClassLoader.getInstance(context, configs.getWebAppClassPath());
+    }
+    return new ProjectClassLoader(stable, context, configs.getWebAppClassPath(),
+        configs.getExcludedclasspath(), logger);
   }
 
   /**
@@ -85,11 +190,49 @@ public class ProjectClassLoader extends WebAppClassLoader {
   @SuppressWarnings("rawtypes")
 public Class loadClass(String name) throws ClassNotFoundException
   {
+	  Class c;
 	  try{
-		  return loadClass(name, false);
+		  c = loadClass(name, false);
 	  }catch(NoClassDefFoundError e){
 		  throw new ClassNotFoundException(name);
 	  }
+	  if (recordingThread == Thread.currentThread()
+	      && c.getClassLoader() instanceof ProjectClassLoader) {
+	    recorded.add(name);
+	  }
+	  return c;
+  }
+
+  /**
+   * Record the classes asked by current thread from now on.
+   */
+  public void startRecording() {
+    recorded.clear();
+    recordingThread = Thread.currentThread();
+  }
+
+  /**
+   * @return the class names recorded , in the order they're asked.
+   */
+  public List<String> stopRecording() {
+    recordingThread = null;
+    return new ArrayList<String>(recorded);
+  }
+
+  /**
+   * The entry (jar or folder) the class is loaded from , null if it's not in
+   * the project classpath.
+   */
+  public File getSource(String name) {
+    String path = name.replace('.', '/').concat(".class");
+    List<ClassPathIndex.Entry> entries = index.find(path);
+    if (entries.size() > 0) {
+      return entries.get(0).getFile();
+    }
+    if (getParent() instanceof ProjectClassLoader) {
+      return ((ProjectClassLoader) getParent()).getSource(name);
+    }
+    return null;
   }
 
   public void addClassPath(String classPath) throws IOException {
@@ -104,9 +247,121 @@ public Class loadClass(String name) throws ClassNotFoundException
         return;
     }
     super.addClassPath(classPath);
+    if (initialized) {
+      Resource resource = Resource.newResource(classPath);
+      if (resource.getFile() != null) {
+        addToIndex(resource.getFile());
+      }
+    }
     return;
   }
 
+  private void addToIndex(File file) {
+    try {
+      index.add(file);
+    } catch (IOException e) {
+      System.err.println("ProjectClassLoader: can't read " + file + " , skipped (" + e + ")");
+    }
+    synchronized (missing) {
+      missing.clear();
+    }
+  }
+
+  private boolean isMissing(String key) {
+    synchronized (missing) {
+      return missing.containsKey(key);
+    }
+  }
+
+  private void setMissing(String key) {
+    synchronized (missing) {
+      missing.put(key, Boolean.TRUE);
+    }
+  }
+
+  @SuppressWarnings("rawtypes")
+  protected Class findClass(String name) throws ClassNotFoundException {
+    String key = "class:" + name;
+    if (isMissing(key)) {
+      throw new ClassNotFoundException(name);
+    }
+
+    String path = name.replace('.', '/').concat(".class");
+    for (ClassPathIndex.Entry entry : index.find(path)) {
+      ClassPathIndex.Content content;
+      try {
+        content = entry.load(path);
+      } catch (IOException e) {
+        continue;
+      }
+      if (content == null) {
+        continue;
+      }
+      definePackage(name, entry);
+      if (content.getBuffer() != null) {
+        return defineClass(name, content.getBuffer(), content.getCodeSource());
+      }
+      byte[] bytes = content.getBytes();
+      return defineClass(name, bytes, 0, bytes.length, content.getCodeSource());
+    }
+
+    setMissing(key);
+    throw new ClassNotFoundException(name);
+  }
+
+  private void definePackage(String className, ClassPathIndex.Entry entry) {
+    int i = className.lastIndexOf('.');
+    if (i == -1) {
+      return;
+    }
+    String pkg = className.substring(0, i);
+    if (getPackage(pkg) != null) {
+      return;
+    }
+    try {
+      Manifest man = entry.getManifest();
+      if (man != null) {
+        definePackage(pkg, man, entry.getURL());
+      } else {
+        definePackage(pkg, null, null, null, null, null, null, null);
+      }
+    } catch (IllegalArgumentException e) {
+      // defined by another thread , it's fine.
+    }
+  }
+
+  public URL findResource(String name) {
+    String key = "resource:" + name;
+    if (isMissing(key)) {
+      return null;
+    }
+    List<ClassPathIndex.Entry> entries = index.find(name);
+    if (entries.size() == 0) {
+      setMissing(key);
+      return null;
+    }
+    return entries.get(0).getResource(name);
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public Enumeration findResources(String name) throws IOException {
+    String key = "resource:" + name;
+    if (isMissing(key)) {
+      return Collections.enumeration(Collections.EMPTY_LIST);
+    }
+    List<URL> urls = new ArrayList<URL>();
+    for (ClassPathIndex.Entry entry : index.find(name)) {
+      URL url = entry.getResource(name);
+      if (url != null) {
+        urls.add(url);
+      }
+    }
+    if (urls.size() == 0) {
+      setMissing(key);
+    }
+    return Collections.enumeration(urls);
+  }
+
   public void addJars(Resource lib) {
     if (initialized) {
       /*
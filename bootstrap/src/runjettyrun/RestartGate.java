@@ -0,0 +1,127 @@
+package runjettyrun;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.mortbay.util.ajax.Continuation;
+import org.mortbay.util.ajax.ContinuationSupport;
+
+/**
+ * Hold the requests while the webapp is restarting , instead of 404/503.
+ *
+ * With SelectChannelConnector the requests are parked by continuations , no
+ * thread is waiting , and they are dispatched again when the gate is opened
+ * or timed out. (With the blocking connectors the thread just waits.)
+ *
+ * @author tony
+ */
+public class RestartGate {
+
+	private static final String PARKED = "runjettyrun.parked";
+
+	private long timeout;
+	/**
+	 * Read without the lock by {@link #pass(HttpServletRequest)} .
+	 */
+	private volatile boolean closed = false;
+	private List<Continuation> parked = new ArrayList<Continuation>();
+
+	private long held = 0;
+	private long heldTime = 0;
+	private long maxHeldTime = 0;
+	private long rejected = 0;
+
+	/**
+	 * @param timeout
+	 *            how long (in milliseconds) a request is held before it's
+	 *            rejected.
+	 */
+	public RestartGate(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public synchronized void close() {
+		closed = true;
+	}
+
+	/**
+	 * Let all the held requests go.
+	 */
+	public synchronized void open() {
+		closed = false;
+		for (Continuation continuation : parked) {
+			continuation.resume();
+		}
+		parked.clear();
+	}
+
+	/**
+	 * Hold the request if the gate is closed , with SelectChannelConnector it
+	 * throws RetryRequest the first time , and we're called again when the
+	 * request is resumed or expired.
+	 *
+	 * @return false if it's timed out , the request should be rejected.
+	 */
+	public boolean pass(HttpServletRequest request) {
+		Long since = (Long) request.getAttribute(PARKED);
+		if (since == null && !closed) {
+			return true;
+		}
+
+		boolean resumed;
+		synchronized (this) {
+			if (since == null) {
+				if (!closed) {
+					return true;
+				}
+				since = Long.valueOf(System.currentTimeMillis());
+				request.setAttribute(PARKED, since);
+			}
+			// the continuation wait on the gate , so it has to be in the lock.
+			Continuation continuation = ContinuationSupport.getContinuation(
+					request, this);
+			if (!continuation.isPending() && !continuation.isResumed()) {
+				parked.add(continuation);
+			}
+			resumed = continuation.suspend(timeout);
+			parked.remove(continuation);
+		}
+		request.removeAttribute(PARKED);
+
+		long time = System.currentTimeMillis() - since.longValue();
+		synchronized (this) {
+			if (resumed || !closed) {
+				held++;
+				heldTime += time;
+				maxHeldTime = Math.max(maxHeldTime, time);
+				return true;
+			}
+			rejected++;
+			return false;
+		}
+	}
+
+	public synchronized long getHeldRequests() {
+		return held;
+	}
+
+	public synchronized long getHeldTime() {
+		return heldTime;
+	}
+
+	public synchronized long getMaxHeldTime() {
+		return maxHeldTime;
+	}
+
+	public synchronized long getRejectedRequests() {
+		return rejected;
+	}
+
+	public synchronized String toString() {
+		return held + " requests held , " + (held == 0 ? 0 : heldTime / held)
+				+ " ms on average , " + maxHeldTime + " ms at most , "
+				+ rejected + " rejected";
+	}
+}
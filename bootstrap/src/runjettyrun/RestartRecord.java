@@ -0,0 +1,146 @@
+package runjettyrun;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.mortbay.jetty.servlet.ServletHandler;
+
+/**
+ * The phases of one restart , in milliseconds.
+ *
+ * @author tony
+ */
+public class RestartRecord {
+
+	private static final int SLOWEST_ENTRIES = 3;
+
+	/**
+	 * scanner , console or jmx.
+	 */
+	String cause;
+	long startedAt;
+
+	/**
+	 * From the first changed file to the start of restart.
+	 */
+	long detection = 0;
+	long stop = 0;
+	long classLoader = 0;
+	long descriptors = 0;
+	long listeners = 0;
+	long servlets = 0;
+	long jspCompile = 0;
+	long warmUp = 0;
+
+	/**
+	 * From the end of restart to the first request served , -1 if there's no
+	 * request yet.
+	 */
+	long firstRequest = -1;
+	long finishedAt = 0;
+
+	List<String> slowestEntries = new ArrayList<String>();
+
+	RestartRecord(String cause, long triggeredAt) {
+		this.cause = cause;
+		this.startedAt = System.currentTimeMillis();
+		this.detection = Math.max(0, startedAt - triggeredAt);
+	}
+
+	/**
+	 * Split web.start() by the times of the servlet handler.
+	 *
+	 * @param start
+	 *            when web.start() is called
+	 * @param end
+	 *            when it returned
+	 */
+	void started(ServletHandler servletHandler, long start, long end) {
+		if (!(servletHandler instanceof TimedServletHandler)
+				|| ((TimedServletHandler) servletHandler).getInitEndedAt() == 0) {
+			// replaced by jetty.xml , or failed to start.
+			descriptors = end - start;
+			return;
+		}
+		TimedServletHandler handler = (TimedServletHandler) servletHandler;
+		descriptors = handler.getStartedAt() - start;
+		listeners = handler.getInitStartedAt() - handler.getStartedAt();
+		servlets = end - handler.getInitStartedAt();
+	}
+
+	void finished() {
+		finishedAt = System.currentTimeMillis();
+	}
+
+	void served() {
+		firstRequest = System.currentTimeMillis() - finishedAt;
+	}
+
+	/**
+	 * Keep the entries which took longest to open.
+	 */
+	void classLoaded(ClassLoader loader) {
+		if (!(loader instanceof ProjectClassLoader)) {
+			return;
+		}
+		List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(
+				((ProjectClassLoader) loader).getEntryTimes().entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+			public int compare(Map.Entry<String, Long> a,
+					Map.Entry<String, Long> b) {
+				return b.getValue().compareTo(a.getValue());
+			}
+		});
+		slowestEntries.clear();
+		for (int i = 0; i < entries.size() && i < SLOWEST_ENTRIES; ++i) {
+			slowestEntries.add(entries.get(i).getKey() + " "
+					+ entries.get(i).getValue() + " ms");
+		}
+	}
+
+	public long getTotal() {
+		return detection + stop + classLoader + getStart() + jspCompile
+				+ warmUp;
+	}
+
+	/**
+	 * web.start()
+	 */
+	public long getStart() {
+		return descriptors + listeners + servlets;
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append(new SimpleDateFormat("HH:mm:ss").format(new Date(startedAt)))
+				.append(" ").append(cause).append(": ").append(getTotal())
+				.append(" ms = detection ").append(detection)
+				.append(" + stop ").append(stop)
+				.append(" + class loader ").append(classLoader)
+				.append(" + descriptors ").append(descriptors)
+				.append(" + listeners ").append(listeners)
+				.append(" + servlets ").append(servlets);
+		if (jspCompile > 0) {
+			sb.append(" + JSPs ").append(jspCompile);
+		}
+		if (warmUp > 0) {
+			sb.append(" + warm-up ").append(warmUp);
+		}
+		if (firstRequest >= 0) {
+			sb.append(" , first request served in ").append(firstRequest)
+					.append(" ms");
+		}
+		if (slowestEntries.size() > 0) {
+			sb.append(" , slowest entries: ");
+			for (int i = 0; i < slowestEntries.size(); ++i) {
+				sb.append(i == 0 ? "" : " , ").append(slowestEntries.get(i));
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,212 @@
+package runjettyrun;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * What the restarts , the scanner and the class loaders cost , it's
+ * registered as "runjettyrun:type=RunJettyRunStats" with the Jetty MBeans.
+ *
+ * @author tony
+ */
+public class RunJettyRunStats implements RunJettyRunStatsMBean {
+
+	private static final RunJettyRunStats instance = new RunJettyRunStats();
+
+	private WebappHolder webapp;
+
+	private int restartCount = 0;
+	private RestartRecord last;
+	private int historySize = 20;
+	private LinkedList<RestartRecord> history = new LinkedList<RestartRecord>();
+
+	private long scanCount = 0;
+	private long lastScanTime = 0;
+	private int lastScannedFiles = 0;
+	private int lastChangedFiles = 0;
+
+	private int loadersCreated = 0;
+
+	/**
+	 * The loaders are kept here until they're collected , so we know if the
+	 * old webapps are leaked.
+	 */
+	private Map<ClassLoader, Boolean> loaders = new WeakHashMap<ClassLoader, Boolean>();
+
+	private RunJettyRunStats() {
+	}
+
+	public static RunJettyRunStats getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Register to the platform MBean server.
+	 */
+	public void register(WebappHolder webapp) throws Exception {
+		this.webapp = webapp;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("runjettyrun:type=RunJettyRunStats");
+		if (!server.isRegistered(name)) {
+			server.registerMBean(this, name);
+		}
+	}
+
+	/**
+	 * @param size
+	 *            how many restarts are kept in the history.
+	 */
+	public synchronized void setHistorySize(int size) {
+		this.historySize = size;
+		while (history.size() > historySize) {
+			history.removeFirst();
+		}
+	}
+
+	public synchronized void restarted(RestartRecord record) {
+		restartCount++;
+		last = record;
+		history.addLast(record);
+		while (history.size() > historySize) {
+			history.removeFirst();
+		}
+	}
+
+	/**
+	 * The last restarts , the oldest first.
+	 */
+	public synchronized List<RestartRecord> getHistory() {
+		return new ArrayList<RestartRecord>(history);
+	}
+
+	public synchronized void scanned(long time, int files, int changes) {
+		scanCount++;
+		lastScanTime = time;
+		lastScannedFiles = files;
+		lastChangedFiles = changes;
+	}
+
+	public synchronized void loaderCreated(ClassLoader loader) {
+		loadersCreated++;
+		loaders.put(loader, Boolean.TRUE);
+	}
+
+	public synchronized int getRestartCount() {
+		return restartCount;
+	}
+
+	public synchronized long getLastRestartTime() {
+		return last == null ? 0 : last.getTotal();
+	}
+
+	public synchronized long getLastDetectionTime() {
+		return last == null ? 0 : last.detection;
+	}
+
+	public synchronized long getLastStopTime() {
+		return last == null ? 0 : last.stop;
+	}
+
+	public synchronized long getLastClassLoaderTime() {
+		return last == null ? 0 : last.classLoader;
+	}
+
+	public synchronized long getLastStartTime() {
+		return last == null ? 0 : last.getStart();
+	}
+
+	public synchronized long getLastDescriptorTime() {
+		return last == null ? 0 : last.descriptors;
+	}
+
+	public synchronized long getLastListenerTime() {
+		return last == null ? 0 : last.listeners;
+	}
+
+	public synchronized long getLastServletTime() {
+		return last == null ? 0 : last.servlets;
+	}
+
+	public synchronized long getLastFirstRequestTime() {
+		return last == null ? -1 : last.firstRequest;
+	}
+
+	public synchronized String[] getRestartHistory() {
+		String[] result = new String[history.size()];
+		int i = 0;
+		for (RestartRecord record : history) {
+			result[i++] = record.toString();
+		}
+		return result;
+	}
+
+	public synchronized long getScanCount() {
+		return scanCount;
+	}
+
+	public synchronized long getLastScanTime() {
+		return lastScanTime;
+	}
+
+	public synchronized int getLastScannedFiles() {
+		return lastScannedFiles;
+	}
+
+	public synchronized int getLastChangedFiles() {
+		return lastChangedFiles;
+	}
+
+	public synchronized int getClassLoadersCreated() {
+		return loadersCreated;
+	}
+
+	public synchronized int getLiveClassLoaders() {
+		return loaders.size();
+	}
+
+	public long getHeldRequests() {
+		RestartGate gate = webapp == null ? null : webapp.getGate();
+		return gate == null ? 0 : gate.getHeldRequests();
+	}
+
+	public long getHeldTime() {
+		RestartGate gate = webapp == null ? null : webapp.getGate();
+		return gate == null ? 0 : gate.getHeldTime();
+	}
+
+	public long getMaxHeldTime() {
+		RestartGate gate = webapp == null ? null : webapp.getGate();
+		return gate == null ? 0 : gate.getMaxHeldTime();
+	}
+
+	public long getRejectedRequests() {
+		RestartGate gate = webapp == null ? null : webapp.getGate();
+		return gate == null ? 0 : gate.getRejectedRequests();
+	}
+
+	public String getBytecodeCache() {
+		return BytecodeCache.getInstance().toString();
+	}
+
+	public String getStaticContentCache() {
+		return String.valueOf(StaticContentCache.getInstance());
+	}
+
+	public String getDescriptorCache() {
+		return DescriptorCache.getInstance().toString();
+	}
+
+	public void restart() throws Exception {
+		if (webapp != null) {
+			webapp.restart("jmx", System.currentTimeMillis());
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package runjettyrun;
+
+/**
+ * The JMX view of {@link RunJettyRunStats}.
+ *
+ * @author tony
+ */
+public interface RunJettyRunStatsMBean {
+
+	int getRestartCount();
+
+	long getLastRestartTime();
+
+	long getLastDetectionTime();
+
+	long getLastStopTime();
+
+	long getLastClassLoaderTime();
+
+	long getLastStartTime();
+
+	long getLastDescriptorTime();
+
+	long getLastListenerTime();
+
+	long getLastServletTime();
+
+	long getLastFirstRequestTime();
+
+	String[] getRestartHistory();
+
+	long getScanCount();
+
+	long getLastScanTime();
+
+	int getLastScannedFiles();
+
+	int getLastChangedFiles();
+
+	int getClassLoadersCreated();
+
+	int getLiveClassLoaders();
+
+	long getHeldRequests();
+
+	/**
+	 * @return the total milliseconds the held requests waited.
+	 */
+	long getHeldTime();
+
+	long getMaxHeldTime();
+
+	long getRejectedRequests();
+
+	String getBytecodeCache();
+
+	String getStaticContentCache();
+
+	String getDescriptorCache();
+
+	void restart() throws Exception;
+}
@@ -0,0 +1,127 @@
+package runjettyrun;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.mortbay.jetty.webapp.WebAppContext;
+
+/**
+ * The loader of the jars in webapp classpath (WEB-INF/lib , Maven
+ * repository , etc.), it's kept between restarts and is the parent of the
+ * {@link ProjectClassLoader} which loads our output folders.
+ *
+ * So a restart only reload the project classes , the third-party classes are
+ * loaded once , which is faster and doesn't fill the perm gen every restart.
+ *
+ * If any jar is changed (last modified time or size) , or the jar list is
+ * changed , we build a new one.
+ *
+ * Note: a class in jars can't see the project classes through its own
+ * loader (ex. Class.forName(name) in a library without using context class
+ * loader), so it's not enabled by default.
+ *
+ * @author tony
+ */
+public class StableClassLoader extends ProjectClassLoader {
+
+	private static StableClassLoader instance;
+
+	private WebAppContext context;
+	private List<String> jars;
+	private long[] stamps;
+
+	private StableClassLoader(WebAppContext context, List<String> jars,
+			long[] stamps) throws IOException {
+		// not the context class loader , it may be an old webapp loader.
+		super(ProjectClassLoader.class.getClassLoader(), false, context,
+				join(jars), null, false);
+		this.context = context;
+		this.jars = jars;
+		this.stamps = stamps;
+	}
+
+	/**
+	 * Get the loader of the jars in the classpath , it's reused if nothing
+	 * changed since last time.
+	 *
+	 * @param projectClassPath
+	 *            the webapp classpath , with -y- and -n- marks.
+	 */
+	public static synchronized StableClassLoader getInstance(
+			WebAppContext context, String projectClassPath) throws IOException {
+		List<String> jars = new ArrayList<String>();
+		if (projectClassPath != null) {
+			for (String entry : projectClassPath.split(File.pathSeparator)) {
+				if (entry.startsWith("-n-")) {
+					continue;
+				}
+				if (entry.startsWith("-y-")) {
+					entry = entry.substring(3);
+				}
+				if (new File(entry).isFile()) {
+					jars.add(entry);
+				}
+			}
+		}
+
+		long[] stamps = stamps(jars);
+		if (instance != null && sameSettings(instance.context, context)
+				&& instance.jars.equals(jars)
+				&& Arrays.equals(instance.stamps, stamps)) {
+			return instance;
+		}
+
+		long start = System.currentTimeMillis();
+		boolean rebuild = instance != null;
+		instance = new StableClassLoader(context, jars, stamps);
+		System.err.println((rebuild ? "Jars changed , rebuilt" : "Built")
+				+ " the loader of " + jars.size() + " jars in "
+				+ (System.currentTimeMillis() - start) + " ms.");
+		return instance;
+	}
+
+	/**
+	 * Close the jars if a new loader is built for the changed jars.
+	 */
+	void closeIfReplaced() {
+		synchronized (StableClassLoader.class) {
+			if (instance != this) {
+				closeIndex();
+			}
+		}
+	}
+
+	/**
+	 * A new context of the same webapp (context swap on restart) could share
+	 * the loader.
+	 */
+	private static boolean sameSettings(WebAppContext a, WebAppContext b) {
+		return a == b
+				|| (a.getContextPath().equals(b.getContextPath()) && a
+						.isParentLoaderPriority() == b.isParentLoaderPriority());
+	}
+
+	private static long[] stamps(List<String> jars) {
+		long[] stamps = new long[jars.size() * 2];
+		for (int i = 0; i < jars.size(); ++i) {
+			File f = new File(jars.get(i));
+			stamps[i * 2] = f.lastModified();
+			stamps[i * 2 + 1] = f.length();
+		}
+		return stamps;
+	}
+
+	private static String join(List<String> jars) {
+		StringBuffer sb = new StringBuffer();
+		for (String jar : jars) {
+			if (sb.length() > 0) {
+				sb.append(File.pathSeparator);
+			}
+			sb.append(jar);
+		}
+		return sb.toString();
+	}
+}
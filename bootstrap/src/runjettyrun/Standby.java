@@ -0,0 +1,134 @@
+package runjettyrun;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Map;
+import java.util.Properties;
+
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.mortbay.jetty.webapp.WebAppContext;
+import org.mortbay.util.IO;
+
+/**
+ * A JVM started by the plugin before it's needed , the classes of Jetty are
+ * loaded and warmed up by a throwaway server , then it wait on a local socket
+ * for the configs of a launch (the rjr system properties) , and start the
+ * webapp as usual.
+ *
+ * @author tony
+ */
+public class Standby {
+
+	private static final String KEY = "rjrstandbykey";
+
+	private static final int WARM_UP_REQUESTS = 200;
+
+	/**
+	 * A connection which send nothing is dropped , it won't block the plugin.
+	 */
+	private static final int READ_TIMEOUT = 5000;
+
+	/**
+	 * @param port
+	 *            where the plugin send the configs
+	 * @param key
+	 *            the plugin send it with the configs , we don't take the
+	 *            configs of anyone else.
+	 */
+	public static void await(int port, String key) throws IOException {
+		warmUp();
+
+		ServerSocket server = new ServerSocket(port, 1, InetAddress
+				.getByName("127.0.0.1"));
+		try {
+			while (true) {
+				Socket socket = server.accept();
+				try {
+					socket.setSoTimeout(READ_TIMEOUT);
+					Properties configs = new Properties();
+					try {
+						configs.load(socket.getInputStream());
+					} catch (SocketTimeoutException e) {
+						continue;
+					}
+					if (!key.equals(configs.remove(KEY))) {
+						continue;
+					}
+					for (Map.Entry<Object, Object> entry : configs.entrySet()) {
+						System.setProperty((String) entry.getKey(),
+								(String) entry.getValue());
+					}
+					OutputStream out = socket.getOutputStream();
+					out.write("OK\n".getBytes("UTF-8"));
+					out.flush();
+					return;
+				} finally {
+					socket.close();
+				}
+			}
+		} finally {
+			server.close();
+		}
+	}
+
+	/**
+	 * Start a webapp with a static page and a JSP servlet , request the page
+	 * a few times and stop it , nothing is printed.
+	 */
+	private static void warmUp() {
+		PrintStream out = System.out;
+		PrintStream err = System.err;
+		PrintStream quiet = new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		});
+		System.setOut(quiet);
+		System.setErr(quiet);
+		File dir = new File(System.getProperty("java.io.tmpdir"),
+				"rjr-standby-" + System.currentTimeMillis());
+		try {
+			dir.mkdirs();
+			FileOutputStream page = new FileOutputStream(new File(dir,
+					"index.html"));
+			page.write("<html><body>standby</body></html>".getBytes("UTF-8"));
+			page.close();
+
+			Server server = new Server();
+			SelectChannelConnector connector = new SelectChannelConnector();
+			connector.setHost("127.0.0.1");
+			connector.setPort(0);
+			server.addConnector(connector);
+			WebAppContext web = new WebAppContext(dir.getPath(), "/");
+			web.setTempDirectory(new File(dir, "work"));
+			server.addHandler(web);
+			server.start();
+			try {
+				URL url = new URL("http://127.0.0.1:" + connector.getLocalPort()
+						+ "/index.html");
+				for (int i = 0; i < WARM_UP_REQUESTS; ++i) {
+					InputStream in = url.openStream();
+					IO.toString(in);
+					in.close();
+				}
+			} finally {
+				server.stop();
+			}
+		} catch (Exception e) {
+			// it's only slower.
+		} finally {
+			IO.delete(dir);
+			System.setOut(out);
+			System.setErr(err);
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package runjettyrun;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mortbay.component.LifeCycle;
+import org.mortbay.io.Buffer;
+import org.mortbay.io.nio.DirectNIOBuffer;
+import org.mortbay.jetty.servlet.DefaultServlet;
+import org.mortbay.jetty.servlet.ServletHolder;
+import org.mortbay.jetty.servlet.SharedResourceCache;
+import org.mortbay.jetty.webapp.WebAppContext;
+import org.mortbay.resource.Resource;
+
+/**
+ * The static content of the "default" servlet , shared by all the restarts of
+ * the webapp.
+ *
+ * Since we disable useFileMappedBuffer (issue 7 , file locking on windows) ,
+ * the files are copied into direct buffers , so nothing is mapped or locked ,
+ * and served from off-heap memory like a mapped file. The LRU is bounded by
+ * bytes only , and the entries are checked by last modified time and size ,
+ * and dropped by the scanner events.
+ *
+ * Jetty build a new cache every time the servlet is initialized , so a
+ * restart lose all the content. Here every started servlet get its own
+ * {@link SharedResourceCache} , which take the buffers from us , it's
+ * released when the webapp is stopped , so nothing of an old webapp is kept.
+ *
+ * @author tony
+ */
+public class StaticContentCache {
+
+	private static int maxCacheSize = 64 * 1024 * 1024;
+
+	private static StaticContentCache instance;
+
+	/**
+	 * By file path , the least recently used first.
+	 */
+	private Map<String, Entry> entries = new LinkedHashMap<String, Entry>(64,
+			0.75f, true);
+	private long cachedSize = 0;
+
+	/**
+	 * The caches of the started servlets.
+	 */
+	private List<SharedResourceCache> caches = new ArrayList<SharedResourceCache>();
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evicted = 0;
+
+	private StaticContentCache() {
+	}
+
+	/**
+	 * @param megabytes
+	 *            0 to keep the cache of Jetty.
+	 */
+	public static void configure(int megabytes) {
+		maxCacheSize = megabytes * 1024 * 1024;
+	}
+
+	/**
+	 * @return null if it's not enabled or the webapp is not started yet.
+	 */
+	public static synchronized StaticContentCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Put a cache of the shared content into the "default" servlet every time
+	 * the webapp is started , and release it when it's stopped.
+	 */
+	public static void install(final WebAppContext web) {
+		if (maxCacheSize <= 0) {
+			return;
+		}
+		web.addLifeCycleListener(new LifeCycle.Listener() {
+			private SharedResourceCache cache;
+
+			public void lifeCycleStarted(LifeCycle event) {
+				try {
+					cache = attach(web);
+				} catch (Exception e) {
+					System.err.println("Can't install the static content cache:" + e);
+				}
+			}
+
+			public void lifeCycleStarting(LifeCycle event) {
+			}
+
+			public void lifeCycleFailure(LifeCycle event, Throwable cause) {
+			}
+
+			public void lifeCycleStopping(LifeCycle event) {
+			}
+
+			public void lifeCycleStopped(LifeCycle event) {
+				if (cache != null) {
+					detach(cache);
+					cache = null;
+				}
+			}
+		});
+	}
+
+	/**
+	 * The servlet keep its cache in a private field , it's the only way in.
+	 *
+	 * @return null if there's no "default" servlet or its cache is off.
+	 */
+	private static SharedResourceCache attach(WebAppContext web)
+			throws Exception {
+		ServletHolder holder = web.getServletHandler().getServlet("default");
+		if (holder == null || !(holder.getServlet() instanceof DefaultServlet)) {
+			return null;
+		}
+		DefaultServlet servlet = (DefaultServlet) holder.getServlet();
+
+		Field field = DefaultServlet.class.getDeclaredField("_nioCache");
+		field.setAccessible(true);
+		LifeCycle own = (LifeCycle) field.get(servlet);
+		if (own == null) {
+			return null; // the cache is turned off by the servlet init parameters.
+		}
+		own.stop();
+
+		StaticContentCache shared;
+		synchronized (StaticContentCache.class) {
+			if (instance == null) {
+				instance = new StaticContentCache();
+			}
+			shared = instance;
+		}
+		SharedResourceCache cache = new SharedResourceCache(servlet, web
+				.getMimeTypes(), shared);
+		cache.setMaxCacheSize(maxCacheSize);
+		cache.setMaxCachedFileSize(getMaxCachedFileSize());
+		cache.setMaxCachedFiles(0); // no limit , only the bytes count.
+		cache.start();
+		field.set(servlet, cache);
+		synchronized (shared) {
+			shared.caches.add(cache);
+		}
+		return cache;
+	}
+
+	private static void detach(SharedResourceCache cache) {
+		StaticContentCache shared = getInstance();
+		if (shared != null) {
+			synchronized (shared) {
+				shared.caches.remove(cache);
+			}
+		}
+		cache.flushCache();
+	}
+
+	private static int getMaxCachedFileSize() {
+		return Math.min(4 * 1024 * 1024, maxCacheSize / 4);
+	}
+
+	/**
+	 * @return the content we have of the resource , null if it's not there or
+	 *         changed since.
+	 */
+	public synchronized Buffer get(Resource resource) throws IOException {
+		File file = resource.getFile();
+		Entry entry = file == null ? null : entries.get(file.getPath());
+		if (entry == null || entry.lastModified != resource.lastModified()
+				|| entry.length != resource.length()) {
+			return null;
+		}
+		return entry.buffer;
+	}
+
+	/**
+	 * Copy the file into a direct buffer , never map it , and keep it.
+	 */
+	public Buffer read(Resource resource) throws IOException {
+		long lastModified = resource.lastModified();
+		int length = (int) resource.length();
+		DirectNIOBuffer buffer = new DirectNIOBuffer(length);
+		InputStream in = resource.getInputStream();
+		try {
+			buffer.readFrom(in, length);
+		} finally {
+			in.close();
+		}
+		File file = resource.getFile();
+		if (file != null) {
+			put(file.getPath(), new Entry(buffer, lastModified, length));
+		}
+		return buffer;
+	}
+
+	private synchronized void put(String key, Entry entry) {
+		Entry old = entries.put(key, entry);
+		if (old != null) {
+			cachedSize -= old.length;
+			evicted++;
+		}
+		cachedSize += entry.length;
+		Iterator<Entry> it = entries.values().iterator();
+		while (cachedSize > maxCacheSize && it.hasNext()) {
+			Entry eldest = it.next();
+			it.remove();
+			cachedSize -= eldest.length;
+			evicted++;
+		}
+	}
+
+	/**
+	 * Count a lookup of a servlet cache.
+	 *
+	 * @param hit
+	 *            the content is served from memory , ours or the servlet's.
+	 */
+	public synchronized void count(boolean hit) {
+		if (hit) {
+			hits++;
+		} else {
+			misses++;
+		}
+	}
+
+	/**
+	 * Drop the content of a changed file , it's also checked by last modified
+	 * time , but a file saved twice in the same second may look the same.
+	 */
+	public void invalidate(File file) {
+		List<SharedResourceCache> current;
+		synchronized (this) {
+			for (Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+				if (sameFile(file, new File(it.next()))) {
+					it.remove();
+				}
+			}
+			cachedSize = 0;
+			for (Entry entry : entries.values()) {
+				cachedSize += entry.length;
+			}
+			current = new ArrayList<SharedResourceCache>(caches);
+		}
+		for (SharedResourceCache cache : current) {
+			cache.invalidate(file);
+		}
+	}
+
+	/**
+	 * Drop everything , the buffers are released.
+	 */
+	public void flushCache() {
+		List<SharedResourceCache> current;
+		synchronized (this) {
+			entries.clear();
+			cachedSize = 0;
+			current = new ArrayList<SharedResourceCache>(caches);
+		}
+		for (SharedResourceCache cache : current) {
+			cache.flushCache();
+		}
+	}
+
+	public static boolean sameFile(File a, File b) {
+		try {
+			return a.equals(b) || a.getCanonicalFile().equals(b.getCanonicalFile());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public synchronized String toString() {
+		long total = hits + misses;
+		return entries.size() + " files , " + (cachedSize / 1024) + " KB of "
+				+ (maxCacheSize / 1024 / 1024) + " MB off-heap , hit rate "
+				+ (total == 0 ? 0 : hits * 100 / total) + "% (" + hits + "/"
+				+ total + ") , " + evicted + " evicted or out of date";
+	}
+
+	/**
+	 * The content of a file and the time and size it's read at.
+	 */
+	private static class Entry {
+		Buffer buffer;
+		long lastModified;
+		long length;
+
+		Entry(Buffer buffer, long lastModified, long length) {
+			this.buffer = buffer;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package runjettyrun;
+
+import org.mortbay.jetty.servlet.ServletHandler;
+
+/**
+ * Tell where the start of webapp goes.
+ *
+ * The servlet handler is started after the descriptors are parsed (web.xml ,
+ * jetty-env.xml , TLDs) , the context listeners are called after that , then
+ * the filters and servlets are initialized.
+ *
+ * @author tony
+ */
+public class TimedServletHandler extends ServletHandler {
+
+	private long startedAt = 0;
+	private long initStartedAt = 0;
+	private long initEndedAt = 0;
+
+	protected synchronized void doStart() throws Exception {
+		startedAt = System.currentTimeMillis();
+		initStartedAt = 0;
+		initEndedAt = 0;
+		super.doStart();
+	}
+
+	public void initialize() throws Exception {
+		initStartedAt = System.currentTimeMillis();
+		try {
+			super.initialize();
+		} finally {
+			initEndedAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * When the descriptors are done.
+	 */
+	public long getStartedAt() {
+		return startedAt;
+	}
+
+	/**
+	 * When the listeners are done.
+	 */
+	public long getInitStartedAt() {
+		return initStartedAt;
+	}
+
+	/**
+	 * When the servlets are initialized.
+	 */
+	public long getInitEndedAt() {
+		return initEndedAt;
+	}
+}
@@ -12,28 +12,17 @@ import org.mortbay.resource.FileResource;
 import org.mortbay.resource.Resource;
 
 /**
- * 2011/5/15 Tony:
+ * A linked resource folder , mapped to "/<context path>" of the webapp root.
  *
- * Why we have such much unsupported method here?
+ * The file operators (length , file , input stream , etc.) are delegated to
+ * the linked folder , so DefaultServlet could use the content length , range
+ * requests and NIO buffers for it like a normal folder.
  *
- * Because this one is not a delegator to real resource,
- * since it's a resource related to webapp root .
+ * As a member of the root ResourceCollection , it's listed as the first
+ * folder of the context path , ex. "/js/lib" is listed as "js/" in webapp
+ * root.
  *
- * So if system try to access this resource , it means "/" ,
- * not "/<context path>/" , so it could be some troubles.
- *
- * We wrote this just for making sure when user try to access
- * "/<context path>" with the root ResourceCollecction,
- * the Virtual Resource will bring him to real resource,
- * and it could help them to do the real operators they need. ;)
- *
- * I am not sure if that's a good implementation ,
- *
- * but it's better to be honest , we didn't support them so far
- * and don't know when user will need them at this time.
- *
- * If you found a better approach or issues related to this,
- * you could discuss it with me , tonylovejava[at]gmail.com .
+ * 2011/5/15 Tony
  */
 public class VirtualResource extends Resource {
 
@@ -44,7 +33,6 @@ public class VirtualResource extends Resource {
 
 	private Resource resource = null;
 	private URL url = null;
-	@SuppressWarnings("unused")
 	private String resourcePath;
 	private String resourcebase = null;
 	private Resource webroot ;
@@ -88,67 +76,61 @@ public class VirtualResource extends Resource {
 		return resource.lastModified();
 	}
 
-	/**
-	 * @throws UnsupportedOperationException
-	 */
 	public long length() {
-		throw new UnsupportedOperationException("Unsupported");
+		return resource.length();
 	}
 
-	/**
-	 * @throws UnsupportedOperationException
-	 */
 	public URL getURL() {
-		throw new UnsupportedOperationException("Unsupported");
+		return resource.getURL();
 	}
-	/**
-	 * @throws UnsupportedOperationException
-	 */
+
 	public File getFile() throws IOException {
-		throw new UnsupportedOperationException("Unsupported");
+		return resource.getFile();
 	}
 
-	/**
-	 * @throws UnsupportedOperationException
-	 */
 	public String getName() {
-		throw new UnsupportedOperationException("Unsupported");
+		return resource.getName();
 	}
 
-	/**
-	 * @throws UnsupportedOperationException
-	 */
 	public InputStream getInputStream() throws IOException {
-		throw new UnsupportedOperationException("Unsupported");
+		return resource.getInputStream();
 	}
 
-	/**
-	 * @throws UnsupportedOperationException
-	 */
 	public OutputStream getOutputStream() throws IOException, SecurityException {
-		throw new UnsupportedOperationException("Unsupported");
+		return resource.getOutputStream();
 	}
 
-	/**
-	 * @throws UnsupportedOperationException
-	 */
 	public boolean delete() throws SecurityException {
-		throw new UnsupportedOperationException("Unsupported");
+		return resource.delete();
 	}
 
-	/**
-	 * @throws UnsupportedOperationException
-	 */
 	public boolean renameTo(Resource dest) throws SecurityException {
-		throw new UnsupportedOperationException("Unsupported");
+		return resource.renameTo(dest);
 	}
+
 	/**
-	 * @throws UnsupportedOperationException
+	 * What we add to the webapp root , the first folder of context path.
+	 * (The files of linked folder is listed by {@link #resolve(String)}.)
 	 */
 	public String[] list() {
-		throw new UnsupportedOperationException("Unsupported");
+		String path = resourcebase.substring(1);
+		int i = path.indexOf('/');
+		if (i != -1) {
+			path = path.substring(0, i);
+		}
+		if (path.length() == 0 || !resource.exists()) {
+			return new String[0];
+		}
+		return new String[] { path + "/" };
 	}
 
+	public String getContextPath() {
+		return resourcebase;
+	}
+
+	public String toString() {
+		return resourcebase + " => " + resourcePath;
+	}
 
 	public Resource addPath(String path) throws IOException,
 			MalformedURLException {
@@ -157,32 +139,29 @@ public class VirtualResource extends Resource {
 		if(!path.startsWith("/"))
 			path = "/" +path;
 
-		if(path.startsWith(this.resourcebase)){
-
-
-			if(this.resourcebase.equals(path)){
-//				System.out.println("got virtual resource , forward  =>"+resourcePath);
-				return resource;
-			}else{
-//				System.out.println("got virtual resource , forward =>"+
-//						resourcePath+"/"+path.substring(this.resourcebase.length()+1));
-				return resource.addPath(path.substring(this.resourcebase.length()+1));
-
-			}
+		if(path.startsWith(this.resourcebase) && (path.length() == resourcebase.length()
+				|| path.charAt(resourcebase.length()) == '/')){
+			return resolve(path.substring(resourcebase.length()));
 		}
 
 		//we have delegate back to webroot.
 		return webroot.addPath(path);
 	}
 
-	/* test code */
-	public static void main(String[] args) throws MalformedURLException, IOException, URISyntaxException {
-
-		VirtualResource vr = new VirtualResource(
-				Resource.newResource("C:/test2/"),
-				"/mytest", "C:/test/");
-		Resource r = vr.addPath("/mytest/test.txt");
-		System.out.println(r.exists());
-
+	/**
+	 * The resource in the linked folder.
+	 * @param path the rest of path after the context path , ex. "/js/app.js" or "".
+	 */
+	public Resource resolve(String path) throws IOException,
+			MalformedURLException {
+		int i = 0;
+		while (i < path.length() && path.charAt(i) == '/') {
+			i++;
+		}
+		if (i == path.length()) {
+//			System.out.println("got virtual resource , forward  =>"+resourcePath);
+			return resource;
+		}
+		return resource.addPath(path.substring(i));
 	}
 }
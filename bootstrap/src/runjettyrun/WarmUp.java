@@ -0,0 +1,216 @@
+package runjettyrun;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Replay the GET requests we have served after a restart , so the JSPs are
+ * compiled , the lazy beans are created and the code is warmed up before we
+ * say the restart is completed.
+ *
+ * The first distinct URLs served with 200 are recorded , and kept in a file
+ * of the launch configuration , so the next launch is warmed up too.
+ *
+ * @author tony
+ */
+public class WarmUp {
+
+	/**
+	 * Our own requests , they're not recorded.
+	 */
+	private static final String HEADER = "X-RJR-WarmUp";
+
+	private File file;
+	private int maxUrls;
+	private int threads;
+	private int port;
+
+	private Set<String> urls = new LinkedHashSet<String>();
+	private boolean dirty = false;
+
+	/**
+	 * @param file
+	 *            where the URLs are kept between launches
+	 * @param maxUrls
+	 *            how many URLs are recorded
+	 * @param threads
+	 *            how many requests are replayed at the same time
+	 * @param port
+	 *            the port of local connector
+	 */
+	public WarmUp(File file, int maxUrls, int threads, int port) {
+		this.file = file;
+		this.maxUrls = maxUrls;
+		this.threads = Math.max(1, threads);
+		this.port = port;
+		load();
+	}
+
+	public static boolean isWarmUp(HttpServletRequest request) {
+		return request.getHeader(HEADER) != null;
+	}
+
+	/**
+	 * Record the request if it's a GET served with 200.
+	 */
+	public void record(HttpServletRequest request, int status) {
+		if (status != HttpURLConnection.HTTP_OK
+				|| !"GET".equals(request.getMethod()) || isWarmUp(request)) {
+			return;
+		}
+		String url = request.getRequestURI();
+		if (request.getQueryString() != null) {
+			url += "?" + request.getQueryString();
+		}
+		synchronized (this) {
+			if (urls.size() < maxUrls && urls.add(url)) {
+				dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Request all the recorded URLs , and wait them to finish.
+	 *
+	 * @return how long it took , in milliseconds.
+	 */
+	public long replay() {
+		List<String> targets;
+		synchronized (this) {
+			targets = new ArrayList<String>(urls);
+		}
+		save();
+		if (targets.size() == 0) {
+			return 0;
+		}
+
+		long start = System.currentTimeMillis();
+		System.err.println("Warming up with " + targets.size() + " URLs ...");
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads,
+				targets.size()));
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (final String target : targets) {
+				results.add(pool.submit(new Callable<String>() {
+					public String call() {
+						return request(target);
+					}
+				}));
+			}
+			for (Future<String> result : results) {
+				try {
+					System.err.println("\t" + result.get());
+				} catch (Exception e) {
+					System.err.println("\t" + e);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		long time = System.currentTimeMillis() - start;
+		System.err.println("Warmed up in " + time + " ms.");
+		return time;
+	}
+
+	private String request(String target) {
+		long start = System.currentTimeMillis();
+		HttpURLConnection conn = null;
+		try {
+			conn = (HttpURLConnection) new URL("http", "127.0.0.1", port, target)
+					.openConnection();
+			conn.setRequestProperty(HEADER, "true");
+			conn.setInstanceFollowRedirects(false);
+			int status = conn.getResponseCode();
+			InputStream in = status < 400 ? conn.getInputStream() : conn
+					.getErrorStream();
+			if (in != null) {
+				byte[] buffer = new byte[8192];
+				while (in.read(buffer) != -1) {
+					// drain it , so the whole page is rendered.
+				}
+				in.close();
+			}
+			return status + " " + (System.currentTimeMillis() - start) + " ms "
+					+ target;
+		} catch (IOException e) {
+			return "failed " + (System.currentTimeMillis() - start) + " ms "
+					+ target + " : " + e;
+		} finally {
+			if (conn != null) {
+				conn.disconnect();
+			}
+		}
+	}
+
+	private void load() {
+		if (!file.isFile()) {
+			return;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null && urls.size() < maxUrls) {
+				if (line.trim().length() > 0) {
+					urls.add(line.trim());
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Can't read warm-up URLs:" + e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	public synchronized void save() {
+		if (!dirty) {
+			return;
+		}
+		BufferedWriter writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(file), "UTF-8"));
+			for (String url : urls) {
+				writer.write(url);
+				writer.newLine();
+			}
+			dirty = false;
+		} catch (IOException e) {
+			System.err.println("Can't save warm-up URLs:" + e);
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,387 @@
+package runjettyrun;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.UnavailableException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.mortbay.jetty.HttpConnection;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Response;
+import org.mortbay.jetty.SessionManager;
+import org.mortbay.jetty.handler.HandlerWrapper;
+import org.mortbay.jetty.servlet.ServletHolder;
+import org.mortbay.jetty.webapp.WebAppContext;
+
+/**
+ * The handler in front of the webapp context , it knows which context is
+ * serving and how to restart it.
+ *
+ * By default we stop and start the same context , the webapp is down until
+ * it's started again.
+ *
+ * When context swap is enabled (rjrswapcontext) , we build and start a new
+ * context with a new class loader while the old one keeps serving , then
+ * switch the requests to the new one , wait the running requests of the old
+ * one to finish , and stop it. If the new one failed to start , the old one
+ * keeps serving.
+ *
+ * While the webapp is restarted in place , the requests are held by the
+ * {@link RestartGate} (rjrholdtimeout) until it's started again.
+ *
+ * @author tony
+ */
+public class WebappHolder extends HandlerWrapper {
+
+	/**
+	 * The longest time we wait the running requests of the old context.
+	 */
+	private static final long DRAIN_TIMEOUT = 10000;
+
+	private Configs configs;
+	private volatile Slot slot;
+	private RestartGate gate;
+
+	/**
+	 * The last restart , until the first request is served.
+	 */
+	private volatile RestartRecord awaitingRequest;
+
+	private WarmUp warmUp;
+
+	private JspPrecompiler jspPrecompiler;
+
+	public WebappHolder(WebAppContext web, Configs configs) {
+		this.configs = configs;
+		this.slot = new Slot(web);
+		if (configs.getRestartHoldTimeout() > 0) {
+			gate = new RestartGate(configs.getRestartHoldTimeout());
+		}
+		setHandler(web);
+	}
+
+	/**
+	 * Clean the compiled JSPs of the work directory if they're out of date ,
+	 * before Jasper is started on them.
+	 */
+	protected void doStart() throws Exception {
+		if (configs.getWorkDir() != null) {
+			WorkDirectory.clean(configs, WorkDirectory.getCompiledJspDir(slot.web));
+		}
+		super.doStart();
+	}
+
+	/**
+	 * The context which is serving now.
+	 */
+	public WebAppContext getWebApp() {
+		return slot.web;
+	}
+
+	public void handle(String target, HttpServletRequest request,
+			HttpServletResponse response, int dispatch) throws IOException,
+			ServletException {
+		if (!isStarted()) {
+			return;
+		}
+		if (gate != null && !gate.pass(request)) {
+			Request base = (request instanceof Request) ? (Request) request
+					: HttpConnection.getCurrentConnection().getRequest();
+			base.setHandled(true);
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+					"The webapp is restarting.");
+			return;
+		}
+		Slot current = slot;
+		current.active.incrementAndGet();
+		try {
+			current.web.handle(target, request, response, dispatch);
+		} finally {
+			current.active.decrementAndGet();
+		}
+		if (warmUp != null) {
+			Response base = (response instanceof Response) ? (Response) response
+					: HttpConnection.getCurrentConnection().getResponse();
+			warmUp.record(request, base.getStatus());
+			if (WarmUp.isWarmUp(request)) {
+				return;
+			}
+		}
+		RestartRecord record = awaitingRequest;
+		if (record != null) {
+			awaitingRequest = null;
+			record.served();
+		}
+	}
+
+	/**
+	 * Replay the recorded requests after every restart.
+	 */
+	public void setWarmUp(WarmUp warmUp) {
+		this.warmUp = warmUp;
+	}
+
+	/**
+	 * Replay the recorded requests now , it's for the first start.
+	 */
+	public void warmUp() {
+		if (warmUp != null) {
+			warmUp.replay();
+		}
+	}
+
+	/**
+	 * Compile the JSPs after every restart.
+	 */
+	public void setJspPrecompiler(JspPrecompiler jspPrecompiler) {
+		this.jspPrecompiler = jspPrecompiler;
+	}
+
+	/**
+	 * Compile the JSPs now , it's for the first start.
+	 */
+	public void precompileJsps() {
+		if (jspPrecompiler != null) {
+			jspPrecompiler.compile(getWebApp());
+		}
+	}
+
+	/**
+	 * @return null if the requests are not held while restarting.
+	 */
+	public RestartGate getGate() {
+		return gate;
+	}
+
+	/**
+	 * Restart the webapp with a new class loader.
+	 *
+	 * @param cause
+	 *            scanner , console , jmx or relaunch
+	 * @param triggeredAt
+	 *            when the change is made , for the scanner it's the first
+	 *            changed file.
+	 */
+	public synchronized void restart(String cause, long triggeredAt)
+			throws Exception {
+		RestartRecord record = new RestartRecord(cause, triggeredAt);
+		if (configs.getSwapContextOnRestart()) {
+			if (!swap(record)) {
+				return;
+			}
+		} else {
+			restartInPlace(record);
+		}
+		completed(record);
+	}
+
+	/**
+	 * Take the configs of a relaunch , the webapp dir , context path ,
+	 * classpath or resource mapping may be changed , so a new context is
+	 * always built and swapped in , even if context swap is not enabled.
+	 *
+	 * The new configs are kept even if the new context failed to start , the
+	 * next restart try them again.
+	 */
+	public synchronized void reload(Configs configs) throws Exception {
+		this.configs = configs;
+		if (jspPrecompiler != null) {
+			jspPrecompiler = new JspPrecompiler(configs,
+					configs.getPrecompileThreads());
+		}
+		// it's kept by the path in context , which may be another file now.
+		if (StaticContentCache.getInstance() != null) {
+			StaticContentCache.getInstance().flushCache();
+		}
+		RestartRecord record = new RestartRecord("relaunch",
+				System.currentTimeMillis());
+		if (swap(record)) {
+			completed(record);
+		}
+	}
+
+	private void completed(RestartRecord record) {
+		// it's not completed until the pages are ready.
+		if (jspPrecompiler != null) {
+			record.jspCompile = jspPrecompiler.compile(getWebApp());
+		}
+		if (warmUp != null) {
+			record.warmUp = warmUp.replay();
+		}
+		record.finished();
+		RunJettyRunStats.getInstance().restarted(record);
+		awaitingRequest = record;
+
+		System.err.println("Restart completed: " + record);
+		if (BytecodeCache.getInstance().isEnabled()) {
+			System.err.println("Bytecode cache: " + BytecodeCache.getInstance());
+		}
+		if (DescriptorCache.getInstance().isEnabled()) {
+			System.err.println("Descriptor cache: " + DescriptorCache.getInstance());
+		}
+		if (gate != null && !configs.getSwapContextOnRestart()) {
+			System.err.println("Restart gate: " + gate);
+		}
+		if (StaticContentCache.getInstance() != null) {
+			System.err.println("Static content cache: " + StaticContentCache.getInstance());
+		}
+	}
+
+	private void restartInPlace(RestartRecord record) throws Exception {
+		WebAppContext web = slot.web;
+		if (gate != null) {
+			gate.close();
+		}
+		try {
+			long start = System.currentTimeMillis();
+			System.err.println("Stopping webapp ...");
+			// the JSP servlet is gone after it's stopped.
+			File jsps = WorkDirectory.getCompiledJspDir(web);
+			web.stop();
+			long stopped = System.currentTimeMillis();
+
+			// the TLDs or jars may be changed.
+			if (configs.getWorkDir() != null) {
+				WorkDirectory.clean(configs, jsps);
+			}
+			closeIndex(web);
+			if (configs.getWebAppClassPath() != null) {
+				ProjectClassLoader loader = ProjectClassLoader.create(web,
+						configs, false);
+				web.setClassLoader(loader);
+			}
+			long loaded = System.currentTimeMillis();
+			System.err.println("Restarting webapp ...");
+			web.start();
+
+			record.stop = stopped - start;
+			record.classLoader = loaded - stopped;
+			record.classLoaded(web.getClassLoader());
+			record.started(web.getServletHandler(), loaded,
+					System.currentTimeMillis());
+		} finally {
+			if (gate != null) {
+				gate.open();
+			}
+		}
+	}
+
+	/**
+	 * @return false if the new context failed to start , the old one is kept.
+	 */
+	private boolean swap(RestartRecord record) throws Exception {
+		long start = System.currentTimeMillis();
+		WebAppContext next = Bootstrap.createWebappContext(configs, false);
+		// they share the temp (or work) directory and the compiled JSPs , it's
+		// given and existed , so the old one doesn't delete it when it's stopped.
+		next.setTempDirectory(slot.web.getTempDirectory());
+		next.setServer(getServer());
+		long loaded = System.currentTimeMillis();
+
+		// the sessions are taken when the new one starts.
+		SessionManager sessions = slot.web.getSessionHandler().getSessionManager();
+		if (sessions instanceof PersistentSessionManager) {
+			((PersistentSessionManager) sessions).handOver();
+		}
+
+		// they share the work directory , the TLDs or jars may be changed. The
+		// old one keeps the JSPs it has loaded , the new one compile them again.
+		if (configs.getWorkDir() != null) {
+			WorkDirectory.clean(configs, WorkDirectory.getCompiledJspDir(slot.web));
+		}
+
+		System.err.println("Starting new webapp context ...");
+		Throwable failure = null;
+		try {
+			next.start();
+			failure = next.getUnavailableException();
+			if (failure == null) {
+				failure = unavailableServlet(next);
+			}
+		} catch (Exception e) {
+			failure = e;
+		}
+		if (failure != null) {
+			System.err.println("New webapp context failed to start , keep serving with the old one.");
+			failure.printStackTrace();
+			if (sessions instanceof PersistentSessionManager) {
+				((PersistentSessionManager) sessions).cancelHandOver();
+			}
+			try {
+				next.stop();
+			} catch (Exception e) {
+				// ignore
+			}
+			closeIndex(next);
+			return false;
+		}
+
+		long started = System.currentTimeMillis();
+		Slot old = slot;
+		slot = new Slot(next);
+		System.err.println("Switched to the new webapp context , stopping the old one ...");
+
+		long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+		while (old.active.get() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		if (old.active.get() > 0) {
+			System.err.println(old.active.get()
+					+ " requests are still running in the old context , stop it anyway.");
+		}
+		// it stop the old one.
+		long stopping = System.currentTimeMillis();
+		setHandler(next);
+		closeIndex(old.web);
+
+		record.stop = System.currentTimeMillis() - stopping;
+		record.classLoader = loaded - start;
+		record.classLoaded(next.getClassLoader());
+		record.started(next.getServletHandler(), loaded, started);
+		return true;
+	}
+
+	/**
+	 * Close the jars of the class loader of a stopped context.
+	 */
+	private static void closeIndex(WebAppContext web) {
+		if (web.getClassLoader() instanceof ProjectClassLoader) {
+			((ProjectClassLoader) web.getClassLoader()).closeIndex();
+		}
+	}
+
+	/**
+	 * Jetty only log the servlets failed in init (load-on-startup) , the
+	 * context is still started.
+	 */
+	private static Throwable unavailableServlet(WebAppContext web) {
+		ServletHolder[] holders = web.getServletHandler().getServlets();
+		if (holders == null) {
+			return null;
+		}
+		for (ServletHolder holder : holders) {
+			if (!holder.isAvailable()) {
+				Throwable cause = holder.getUnavailableException();
+				return cause != null ? cause : new UnavailableException(
+						holder.getName());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A context and its running requests.
+	 */
+	private static class Slot {
+		WebAppContext web;
+		AtomicInteger active = new AtomicInteger();
+
+		Slot(WebAppContext web) {
+			this.web = web;
+		}
+	}
+}
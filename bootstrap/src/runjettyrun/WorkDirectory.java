@@ -0,0 +1,203 @@
+package runjettyrun;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mortbay.jetty.servlet.ServletHolder;
+import org.mortbay.jetty.webapp.WebAppContext;
+import org.mortbay.util.IO;
+
+/**
+ * The work directory of webapp given by the launch configuration (rjrworkdir) ,
+ * it's kept between restarts and launches , so the JSPs compiled by Jasper
+ * are reused.
+ *
+ * Jasper only check the JSP and its includes and tag files , it don't know
+ * the TLDs and jars are changed , so we keep their time and size in a stamp
+ * file , and clean the compiled JSPs if they're changed. It's done before
+ * the context is started , so its Jasper never lose the JSPs it compiled.
+ *
+ * @author tony
+ */
+public class WorkDirectory {
+
+	private static final String STAMP = "rjr-work.stamp";
+
+	private static final String JSP_SERVLET = "jsp";
+
+	/**
+	 * The package of compiled JSPs , see
+	 * JspCompilationContext.getServletPackageName() .
+	 */
+	static final String JSP_PACKAGE = "org.apache.jsp";
+
+	/**
+	 * Create the work directory if it's not there.
+	 *
+	 * Jetty don't delete the temp directory of webapp on stop if it existed.
+	 */
+	public static File prepare(Configs configs) {
+		File dir = new File(configs.getWorkDir());
+		dir.mkdirs();
+		return dir;
+	}
+
+	/**
+	 * Where Jasper put the compiled JSPs , the "scratchdir" of JSP servlet ,
+	 * or the temp directory of webapp when it's not given (webdefault.xml
+	 * don't give it). The JSP servlet is only there while the context is
+	 * started.
+	 */
+	public static File getScratchDir(WebAppContext web) {
+		String scratch = getScratchDirParameter(web);
+		return scratch != null ? new File(scratch) : web.getTempDirectory();
+	}
+
+	/**
+	 * What we delete when the JSPs are out of date , the scratch dir when
+	 * it's given (it's Jasper's own) , or the package of compiled JSPs in the
+	 * temp directory.
+	 *
+	 * Before the context is started , it's the "jsp" folder of the temp
+	 * directory , Jetty give it to the JSP servlet when the descriptors don't
+	 * (WebXmlConfiguration).
+	 */
+	public static File getCompiledJspDir(WebAppContext web) {
+		if (web.getServletHandler().getServlet(JSP_SERVLET) == null) {
+			return new File(web.getTempDirectory(), JSP_SERVLET);
+		}
+		String scratch = getScratchDirParameter(web);
+		return scratch != null ? new File(scratch) : new File(web
+				.getTempDirectory(), JSP_PACKAGE.replace('.', File.separatorChar));
+	}
+
+	private static String getScratchDirParameter(WebAppContext web) {
+		ServletHolder holder = web.getServletHandler().getServlet(JSP_SERVLET);
+		return holder == null ? null : holder.getInitParameter("scratchdir");
+	}
+
+	/**
+	 * Clean the compiled JSPs if the TLDs or jars are changed since they're
+	 * compiled , before the context which compile them again is started.
+	 *
+	 * @param jsps
+	 *            by {@link #getCompiledJspDir(WebAppContext)} , taken while
+	 *            the context is started.
+	 */
+	public static void clean(Configs configs, File jsps) {
+		File dir = prepare(configs);
+		List<String> stamp = stamp(configs);
+		File stampFile = new File(dir, STAMP);
+		if (stamp.equals(read(stampFile))) {
+			return;
+		}
+		if (jsps.exists()) {
+			System.err.println("TLDs or jars are changed , clean the compiled JSPs.");
+			IO.delete(jsps);
+		}
+		write(stampFile, stamp);
+	}
+
+	/**
+	 * The path , time and size of TLDs in WEB-INF and the jars of webapp.
+	 */
+	private static List<String> stamp(Configs configs) {
+		List<String> stamp = new ArrayList<String>();
+		File webInf = new File(configs.getWebAppDir(), "WEB-INF");
+		addTlds(webInf, stamp);
+		File[] libs = new File(webInf, "lib").listFiles();
+		if (libs != null) {
+			for (File lib : libs) {
+				add(lib, stamp);
+			}
+		}
+		if (configs.getWebAppClassPath() != null) {
+			for (String entry : configs.getWebAppClassPath().split(
+					String.valueOf(File.pathSeparatorChar))) {
+				File file = new File(entry);
+				if (file.isFile()) {
+					add(file, stamp);
+				}
+			}
+		}
+		return stamp;
+	}
+
+	private static void addTlds(File folder, List<String> stamp) {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				if (!"classes".equals(file.getName())
+						&& !"lib".equals(file.getName())) {
+					addTlds(file, stamp);
+				}
+			} else if (file.getName().endsWith(".tld")) {
+				add(file, stamp);
+			}
+		}
+	}
+
+	private static void add(File file, List<String> stamp) {
+		stamp.add(file.getAbsolutePath() + "|" + file.lastModified() + "|"
+				+ file.length());
+	}
+
+	private static List<String> read(File file) {
+		List<String> lines = new ArrayList<String>();
+		if (!file.isFile()) {
+			return lines;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} catch (IOException e) {
+			System.err.println("Can't read work directory stamp:" + e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		return lines;
+	}
+
+	private static void write(File file, List<String> lines) {
+		Writer writer = null;
+		try {
+			writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+			for (String line : lines) {
+				writer.write(line);
+				writer.write("\n");
+			}
+		} catch (IOException e) {
+			System.err.println("Can't write work directory stamp:" + e);
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+}
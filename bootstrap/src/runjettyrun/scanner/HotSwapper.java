@@ -0,0 +1,152 @@
+package runjettyrun.scanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import runjettyrun.Configs;
+
+/**
+ * Redefines changed classes in place with java.lang.instrument ,
+ * so we don't need to stop and start the whole webapp for a method body change.
+ *
+ * The bootstrap jar is loaded as an agent (-javaagent) by the plugin ,
+ * see {@link runjettyrun.Bootstrap#premain(String, Instrumentation)}.
+ *
+ * The JVM only allows to change method bodies ,
+ * if the class structure is changed (new fields or methods , etc),
+ * redefineClasses will fail and the caller should do a full restart.
+ *
+ * @author tony
+ */
+public class HotSwapper {
+
+	private static Instrumentation instrumentation;
+
+	private List<File> classFolders = new ArrayList<File>();
+
+	private String lastFailure;
+
+	public HotSwapper(Configs config) {
+		for (String path : config.getWebAppClassPathList()) {
+			File f = new File(path);
+			if (f.isDirectory()) {
+				classFolders.add(f.getAbsoluteFile());
+			}
+		}
+	}
+
+	public static void setInstrumentation(Instrumentation inst) {
+		instrumentation = inst;
+	}
+
+	public static boolean isAvailable() {
+		return instrumentation != null
+				&& instrumentation.isRedefineClassesSupported();
+	}
+
+	/**
+	 * Map the changed files to class names ,
+	 * the list is using the format of RJRFileChangeListener ,
+	 * "*" for changed , "+" for added , "-" for removed.
+	 *
+	 * @return null if any of the change is not a modified class file in the
+	 *         webapp class folders.
+	 */
+	public Map<String, File> resolveClasses(Collection<String> changes) {
+		Map<String, File> result = new HashMap<String, File>();
+		for (String change : changes) {
+			if (!change.startsWith("*") || !change.endsWith(".class")) {
+				return null;
+			}
+			File file = new File(change.substring(1)).getAbsoluteFile();
+			String className = toClassName(file);
+			if (className == null) {
+				return null;
+			}
+			result.put(className, file);
+		}
+		return result;
+	}
+
+	private String toClassName(File file) {
+		String path = file.getPath();
+		for (File folder : classFolders) {
+			String base = folder.getPath() + File.separator;
+			if (path.startsWith(base)) {
+				String name = path.substring(base.length(),
+						path.length() - ".class".length());
+				return name.replace(File.separatorChar, '.');
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Redefine the loaded classes which are defined by the given loader.
+	 * Classes not loaded yet will be loaded from the new class file later.
+	 *
+	 * @return the count of redefined classes , or -1 if JVM refused to
+	 *         redefine them , see {@link #getLastFailure()}.
+	 */
+	@SuppressWarnings("rawtypes")
+	public int redefine(ClassLoader loader, Map<String, File> classes) {
+		lastFailure = null;
+		List<ClassDefinition> definitions = new ArrayList<ClassDefinition>();
+		try {
+			for (Class c : instrumentation.getAllLoadedClasses()) {
+				if (c.getClassLoader() != loader) {
+					continue;
+				}
+				File f = classes.get(c.getName());
+				if (f != null) {
+					definitions.add(new ClassDefinition(c, readFile(f)));
+				}
+			}
+			if (definitions.size() != 0) {
+				instrumentation.redefineClasses(definitions
+						.toArray(new ClassDefinition[definitions.size()]));
+			}
+			return definitions.size();
+		} catch (UnsupportedOperationException e) {
+			lastFailure = "class structure changed (" + e.getMessage() + ")";
+		} catch (IOException e) {
+			lastFailure = "can't read class file (" + e.getMessage() + ")";
+		} catch (ClassNotFoundException e) {
+			lastFailure = e.toString();
+		} catch (LinkageError e) {
+			lastFailure = e.toString();
+		} catch (Exception e) {
+			lastFailure = e.toString();
+		}
+		return -1;
+	}
+
+	public String getLastFailure() {
+		return lastFailure;
+	}
+
+	private static byte[] readFile(File f) throws IOException {
+		InputStream in = new FileInputStream(f);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) f.length());
+			byte[] buf = new byte[8192];
+			int len;
+			while ((len = in.read(buf)) != -1) {
+				out.write(buf, 0, len);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -3,13 +3,16 @@ package runjettyrun.scanner;
 import java.io.File;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
-import org.mortbay.jetty.webapp.WebAppContext;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import org.mortbay.util.Scanner;
 import runjettyrun.Configs;
-import runjettyrun.ProjectClassLoader;
+import runjettyrun.LinkedResourceCollection;
+import runjettyrun.StaticContentCache;
+import runjettyrun.WebappHolder;
 
 /**
  * For more details controll we need,
@@ -21,21 +24,60 @@ public class RJRFileChangeListener implements Scanner.BulkListener,Scanner.Discr
 	/**
 	 * Logger for this class
 	 */
-	private WebAppContext web;
+	private WebappHolder webapp;
 	private  Configs config;
 	private boolean init = false;
 	private Set<String> folderSet;
 	private boolean isDirty = false;
 	private Set<String> dirtylist = new HashSet<String>();
+	private HotSwapper hotSwapper;
 
-	public RJRFileChangeListener(WebAppContext web, Configs config) {
+	/**
+	 * Eclipse builder write the class files one by one , we wait until the
+	 * dirty list stop growing for the quiet period before we restart,
+	 * but never wait longer than max delay since the first change.
+	 */
+	private long quietPeriod;
+	private long maxDelay;
+	private Timer timer;
+	private TimerTask pendingRestart;
+	private long firstDirtyTime = 0;
+	private int scheduledSize = 0;
+	private int rawEvents = 0;
+
+	/**
+	 * When the first pending change is made , to know how long the detection
+	 * took.
+	 */
+	private long firstChangeTime = 0;
+
+	public RJRFileChangeListener(WebappHolder webapp, Configs config) {
 		super();
 		folderSet= new HashSet<String>();
-		this.web = web;
+		this.webapp = webapp;
 		this.config = config;
+		this.quietPeriod = config.getScanQuietPeriod();
+		this.maxDelay = config.getScanMaxDelay();
+		if(HotSwapper.isAvailable()){
+			System.err.println("Class redefinition enabled , changed class bodies will be swapped in place.");
+			hotSwapper = new HotSwapper(config);
+		}
 	}
 
-	public void fileChanged(String filename) throws Exception {
+	/**
+	 * The polling scanner only report changes every scan interval ,
+	 * a quiet period shorter than that can't tell if the build is done,
+	 * so the caller could raise it.
+	 * @param period
+	 */
+	public synchronized void setMinimumQuietPeriod(long period) {
+		if (quietPeriod > 0 && quietPeriod < period) {
+			quietPeriod = period;
+			maxDelay = Math.max(maxDelay, period);
+		}
+	}
+
+	public synchronized void fileChanged(String filename) throws Exception {
 		if(!init){	//do nothing when init.
 			return ;
 		}
@@ -55,11 +97,13 @@ public class RJRFileChangeListener implements Scanner.BulkListener,Scanner.Discr
 		boolean isFolder = (folderSet.contains(filename));
 		isDirty = isDirty || !isFolder; // if user change a file, we should restart the server, but not for folder.
 		if(!isFolder){
+			countEvent(filename);
 			dirtylist.add("*"+filename);
+			dropCachedContent(filename, false);
 		}
 	}
 
-	public void fileAdded(String filename) throws Exception {
+	public synchronized void fileAdded(String filename) throws Exception {
 		File f = new File(filename);
 
 		if(f.isDirectory()){
@@ -88,18 +132,54 @@ public class RJRFileChangeListener implements Scanner.BulkListener,Scanner.Discr
 			return;
 		}
 
+		dropCachedContent(filename, true);
 		if(f.isFile()){
+			countEvent(filename);
 			dirtylist.add("+"+filename);
 		}
 		isDirty = isDirty || f.isFile(); //if user adding a file , we should restart the server, but not for folders.
 	}
 
+	/**
+	 * A changed file is dropped from the static content cache right away ,
+	 * an added or removed file (or folder) may hide or show another one under
+	 * the same path (ex. linked resource folders or welcome files) , so we drop
+	 * all the content. The resolved paths keep the time and size of the files ,
+	 * they're dropped for every change.
+	 */
+	private void dropCachedContent(String filename, boolean all){
+		if(webapp.getWebApp().getBaseResource() instanceof LinkedResourceCollection){
+			((LinkedResourceCollection) webapp.getWebApp().getBaseResource()).flushCache();
+		}
+		StaticContentCache cache = StaticContentCache.getInstance();
+		if(cache == null){
+			return;
+		}
+		if(all){
+			cache.flushCache();
+		}else{
+			cache.invalidate(new File(filename));
+		}
+	}
+
+	private void countEvent(String filename){
+		rawEvents++;
+		long now = System.currentTimeMillis();
+		long time = new File(filename).lastModified(); // 0 if it's removed.
+		if(time <= 0 || time > now){
+			time = now;
+		}
+		if(firstChangeTime == 0 || time < firstChangeTime){
+			firstChangeTime = time;
+		}
+	}
+
 	private boolean isIgnored(String filename){
 		return (config.getIgnoreScanClassFile() && filename.endsWith(".class") && !folderSet.contains(filename));
 	}
 
 
-	public void fileRemoved(String filename) throws Exception {
+	public synchronized void fileRemoved(String filename) throws Exception {
 		if(!init){ //do nothing when init.
 			return ;
 		}
@@ -111,10 +191,12 @@ public class RJRFileChangeListener implements Scanner.BulkListener,Scanner.Discr
 			return;
 		}
 
+		dropCachedContent(filename, true);
 		boolean isFolder = folderSet.contains(filename);
 		if(isFolder){
 			folderSet.remove(filename);
 		}else{
+			countEvent(filename);
 			dirtylist.add("-"+filename);
 		}
 		isDirty = isDirty || !isFolder; // if user adding a file , we should restart the server , but not for folders.
@@ -126,40 +208,118 @@ public class RJRFileChangeListener implements Scanner.BulkListener,Scanner.Discr
 	 * @throws Exception
 	 */
 	public void filesChanged(@SuppressWarnings("rawtypes") List changes) throws Exception {
+		synchronized (this) {
+			if(!init){
+				init = true; //ignore first time
+				return  ;
+			}
 
-		if(!init){
-			init = true; //ignore first time
-			return  ;
+			if(!isDirty) return ;
+
+			if(quietPeriod > 0){
+				scheduleRestart();
+				return ;
+			}
 		}
-		try {
+		applyChanges();
+	}
 
-			if(!isDirty) return ;
+	/**
+	 * (Re)schedule the restart if the dirty list is still growing.
+	 */
+	private void scheduleRestart() {
+		if (dirtylist.size() == scheduledSize && pendingRestart != null) {
+			return;
+		}
+		scheduledSize = dirtylist.size();
 
-			System.err.println("Stopping webapp ...");
-			System.err.println("File changed:");
-			for(String str:dirtylist){
-				System.err.println(str);
+		long now = System.currentTimeMillis();
+		if (firstDirtyTime == 0) {
+			firstDirtyTime = now;
+		}
+		if (pendingRestart != null) {
+			pendingRestart.cancel();
+		}
+		if (timer == null) {
+			timer = new Timer("RJR Restart Scheduler", true);
+		}
+
+		long delay = Math.min(quietPeriod,
+				Math.max(0, firstDirtyTime + maxDelay - now));
+		pendingRestart = new TimerTask() {
+			public void run() {
+				applyChanges();
+			}
+		};
+		timer.schedule(pendingRestart, delay);
+	}
+
+	/**
+	 * Take all the pending changes , and redefine the classes or restart the
+	 * webapp.
+	 */
+	private void applyChanges() {
+		Set<String> changes;
+		int events;
+		long changedAt;
+		synchronized (this) {
+			if (!isDirty) {
+				return;
 			}
+			changes = new HashSet<String>(dirtylist);
+			events = rawEvents;
+			changedAt = firstChangeTime;
+
+			isDirty = false;
+			dirtylist.clear();
+			rawEvents = 0;
+			firstChangeTime = 0;
+			firstDirtyTime = 0;
+			scheduledSize = 0;
+			pendingRestart = null;
+		}
 
-			web.stop();
+		try {
+			System.err.println("File changed (" + events
+					+ " events merged into " + changes.size() + " changes):");
+			for(String str:changes){
+				System.err.println(str);
+			}
 
-			if (config.getWebAppClassPath() != null) {
-				ProjectClassLoader loader = new ProjectClassLoader(web,
-						config.getWebAppClassPath(), config.getExcludedclasspath(), false);
-				web.setClassLoader(loader);
+			if(hotSwapper != null && redefineClasses(changes)){
+				return;
 			}
-			System.err.println("Restarting webapp ...");
-			web.start();
-			System.err.println("Restart completed.");
+
+			webapp.restart("scanner", changedAt == 0 ? System.currentTimeMillis() : changedAt);
 		} catch (Exception e) {
 			System.err.println(
 					"Error reconfiguring/restarting webapp after change in watched files");
 			e.printStackTrace();
-		}finally{
-			isDirty = false;
-			dirtylist.clear();
 		}
 	}
 
+	/**
+	 * Try to swap the changed class bodies in place ,
+	 * @return false if we have to do a full restart.
+	 */
+	private boolean redefineClasses(Set<String> changes){
+		Map<String, File> classes = hotSwapper.resolveClasses(changes);
+		if(classes == null){
+			System.err.println("Not only class files changed , do a full restart.");
+			return false;
+		}
+
+		long start = System.currentTimeMillis();
+		int count = hotSwapper.redefine(webapp.getWebApp().getClassLoader(), classes);
+		if(count == -1){
+			System.err.println("Can't redefine classes in place: "
+					+ hotSwapper.getLastFailure() + " , do a full restart.");
+			return false;
+		}
+		System.err.println("Redefined " + count + " loaded classes in place in "
+				+ (System.currentTimeMillis() - start) + " ms.");
+		return true;
+	}
+
 
 }
@@ -0,0 +1,499 @@
+package runjettyrun.scanner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mortbay.util.Scanner;
+
+import runjettyrun.RunJettyRunStats;
+
+/**
+ * A polling scanner which keeps a snapshot of the scanned tree in a file ,
+ * so the first scan of next launch doesn't need to stat every file again.
+ *
+ * The snapshot store path , size and mtime of files , and the mtime of every
+ * folder. When we start with a snapshot , only the folders whose mtime changed
+ * are listed again , the files of the other folders are taken from the
+ * snapshot. (Adding , removing or renaming a file always touch the mtime of
+ * its folder.)
+ *
+ * A file rewritten in place doesn't touch the folder , so the snapshot entry
+ * may be out of date. The first polling scan will see it , and since it's
+ * modified before we start , the webapp is already using it , we just take the
+ * new value silently instead of reporting a change.
+ *
+ * The files in scan list are compared by size and mtime every scan , they're
+ * not kept in the snapshot file , a stat of each one is cheap.
+ *
+ * It deliver the same events as {@link Scanner} to the listeners , the first
+ * scan only call {@link Scanner.BulkListener#filesChanged(List)} with an empty
+ * list , that's what RJRFileChangeListener is waiting for.
+ *
+ * @author tony
+ */
+public class SnapshotScanner {
+
+	private static final int SNAPSHOT_MAGIC = 0x524a5253; // "RJRS"
+	private static final int SNAPSHOT_VERSION = 1;
+
+	/**
+	 * File systems like FAT only have a 2 seconds mtime , a folder changed
+	 * right before we save the snapshot may not change mtime again , so we
+	 * don't trust them on next launch.
+	 */
+	private static final long MTIME_GRANULARITY = 2000;
+
+	private List<File> scanDirs;
+	private File snapshotFile;
+	private int scanInterval;
+	private List<Scanner.Listener> listeners = new ArrayList<Scanner.Listener>();
+
+	private Map<String, Folder> roots = new HashMap<String, Folder>();
+	/**
+	 * The files in scan list , path to {size , mtime}.
+	 */
+	private Map<String, long[]> rootFiles = new HashMap<String, long[]>();
+	private long startTime;
+	private volatile boolean running = false;
+	/**
+	 * Save the snapshot on exit , it's removed when we're stopped.
+	 */
+	private Thread shutdownHook;
+
+	public SnapshotScanner(List<File> scanDirs, File snapshotFile) {
+		this.scanDirs = scanDirs;
+		this.snapshotFile = snapshotFile;
+	}
+
+	public void setScanInterval(int scanInterval) {
+		this.scanInterval = scanInterval;
+	}
+
+	public void addListener(Scanner.Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Take the baseline scan (from the snapshot when possible) and start
+	 * polling.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		startTime = System.currentTimeMillis();
+
+		Map<String, Folder> snapshot = loadSnapshot();
+		int reused = 0;
+		int listed = 0;
+		for (File dir : scanDirs) {
+			if (!dir.isDirectory()) {
+				if (dir.isFile()) {
+					rootFiles.put(dir.getPath(), new long[] { dir.length(),
+							dir.lastModified() });
+				}
+				continue;
+			}
+			Folder previous = snapshot.get(dir.getPath());
+			Folder folder = baseline(dir, previous);
+			roots.put(dir.getPath(), folder);
+			if (previous != null) {
+				reused++;
+			} else {
+				listed++;
+			}
+		}
+		if (snapshotFile != null) {
+			System.err.println("Scan snapshot: " + reused
+					+ " folder(s) restored , " + listed + " folder(s) fully scanned.");
+		}
+
+		// same as the first pass of org.mortbay.util.Scanner.
+		reportBulkChanges(new ArrayList<String>());
+		saveSnapshot();
+
+		running = true;
+		shutdownHook = new Thread() {
+			public void run() {
+				SnapshotScanner.this.stop();
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+		if (scanInterval <= 0) {
+			return;
+		}
+		Thread thread = new Thread("RJR Polling Scanner") {
+			public void run() {
+				while (running) {
+					try {
+						Thread.sleep(scanInterval * 1000L);
+					} catch (InterruptedException e) {
+						return;
+					}
+					if (running) {
+						scan();
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// it's the hook itself , the JVM is shutting down.
+		}
+		shutdownHook = null;
+		saveSnapshot();
+	}
+
+	/**
+	 * Compare the tree with last scan , and report the differences.
+	 */
+	public synchronized void scan() {
+		long start = System.currentTimeMillis();
+		List<String> changes = new ArrayList<String>();
+		int files = 0;
+		for (File dir : scanDirs) {
+			if (dir.isFile() || rootFiles.containsKey(dir.getPath())) {
+				files += compareFile(dir, changes);
+				continue;
+			}
+			Folder old = roots.get(dir.getPath());
+			if (old == null) {
+				old = new Folder(-1);
+			}
+			Folder folder = compare(dir, old, changes);
+			roots.put(dir.getPath(), folder);
+			files += countFiles(folder);
+		}
+		RunJettyRunStats.getInstance().scanned(
+				System.currentTimeMillis() - start, files, changes.size());
+		if (changes.size() != 0) {
+			reportBulkChanges(changes);
+		}
+	}
+
+	/**
+	 * Build the folder from the file system , but reuse the files of previous
+	 * snapshot if the folder is not changed.
+	 */
+	private Folder baseline(File dir, Folder previous) {
+		long mtime = dir.lastModified();
+		Folder folder = new Folder(mtime);
+
+		File[] children = null;
+		if (previous == null || previous.mtime != mtime) {
+			children = dir.listFiles();
+		}
+
+		if (children == null) {
+			if (previous != null && previous.mtime == mtime) {
+				folder.files.putAll(previous.files);
+				folder.restored = true;
+				for (String name : previous.folders.keySet()) {
+					File child = new File(dir, name);
+					if (child.isDirectory()) {
+						folder.folders.put(name,
+								baseline(child, previous.folders.get(name)));
+					}
+				}
+			}
+			return folder;
+		}
+
+		for (File child : children) {
+			if (child.isDirectory()) {
+				Folder sub = previous == null ? null : previous.folders.get(child.getName());
+				folder.folders.put(child.getName(), baseline(child, sub));
+			} else if (child.isFile()) {
+				folder.files.put(child.getName(),
+						new long[] { child.length(), child.lastModified() });
+			}
+		}
+		return folder;
+	}
+
+	private Folder compare(File dir, Folder old, List<String> changes) {
+		Folder folder = new Folder(dir.lastModified());
+		File[] children = dir.listFiles();
+		if (children == null) {
+			reportRemovedTree(dir, old, changes);
+			return folder;
+		}
+
+		for (File child : children) {
+			String name = child.getName();
+			if (child.isDirectory()) {
+				Folder sub = old.folders.get(name);
+				if (sub == null) {
+					sub = new Folder(-1);
+				}
+				folder.folders.put(name, compare(child, sub, changes));
+			} else if (child.isFile()) {
+				long[] stat = new long[] { child.length(), child.lastModified() };
+				folder.files.put(name, stat);
+
+				long[] previous = old.files.get(name);
+				if (previous == null) {
+					changes.add(child.getPath());
+					reportAdded(child.getPath());
+				} else if (previous[0] != stat[0] || previous[1] != stat[1]) {
+					if (old.restored && stat[1] < startTime) {
+						// out of date snapshot entry , not a real change.
+						continue;
+					}
+					changes.add(child.getPath());
+					reportChanged(child.getPath());
+				}
+			}
+		}
+
+		for (String name : old.files.keySet()) {
+			if (!folder.files.containsKey(name)) {
+				String path = new File(dir, name).getPath();
+				changes.add(path);
+				reportRemoved(path);
+			}
+		}
+		for (String name : old.folders.keySet()) {
+			if (!folder.folders.containsKey(name)) {
+				reportRemovedTree(new File(dir, name), old.folders.get(name), changes);
+			}
+		}
+		return folder;
+	}
+
+	/**
+	 * Compare a file of scan list with last scan.
+	 *
+	 * @return 1 if the file is there , 0 if it's not.
+	 */
+	private int compareFile(File file, List<String> changes) {
+		String path = file.getPath();
+		long[] previous = rootFiles.get(path);
+		if (!file.isFile()) {
+			if (previous != null) {
+				rootFiles.remove(path);
+				changes.add(path);
+				reportRemoved(path);
+			}
+			return 0;
+		}
+		long[] stat = new long[] { file.length(), file.lastModified() };
+		rootFiles.put(path, stat);
+		if (previous == null) {
+			changes.add(path);
+			reportAdded(path);
+		} else if (previous[0] != stat[0] || previous[1] != stat[1]) {
+			changes.add(path);
+			reportChanged(path);
+		}
+		return 1;
+	}
+
+	private static int countFiles(Folder folder) {
+		int count = folder.files.size();
+		for (Folder sub : folder.folders.values()) {
+			count += countFiles(sub);
+		}
+		return count;
+	}
+
+	private void reportRemovedTree(File dir, Folder old, List<String> changes) {
+		for (String name : old.files.keySet()) {
+			String path = new File(dir, name).getPath();
+			changes.add(path);
+			reportRemoved(path);
+		}
+		for (String name : old.folders.keySet()) {
+			reportRemovedTree(new File(dir, name), old.folders.get(name), changes);
+		}
+	}
+
+	private Map<String, Folder> loadSnapshot() {
+		Map<String, Folder> result = new HashMap<String, Folder>();
+		if (snapshotFile == null || !snapshotFile.isFile()) {
+			return result;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(snapshotFile)));
+			if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+				return result;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; ++i) {
+				String root = in.readUTF();
+				result.put(root, readFolder(in));
+			}
+		} catch (IOException e) {
+			System.err.println("Can't read scan snapshot , do a full scan instead:" + e);
+			result.clear();
+		} finally {
+			close(in);
+		}
+		return result;
+	}
+
+	private static Folder readFolder(DataInputStream in) throws IOException {
+		Folder folder = new Folder(in.readLong());
+		int files = in.readInt();
+		for (int i = 0; i < files; ++i) {
+			String name = in.readUTF();
+			folder.files.put(name, new long[] { in.readLong(), in.readLong() });
+		}
+		int folders = in.readInt();
+		for (int i = 0; i < folders; ++i) {
+			String name = in.readUTF();
+			folder.folders.put(name, readFolder(in));
+		}
+		return folder;
+	}
+
+	private synchronized void saveSnapshot() {
+		if (snapshotFile == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		File tmp = new File(snapshotFile.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmp)));
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeInt(roots.size());
+			for (Map.Entry<String, Folder> root : roots.entrySet()) {
+				out.writeUTF(root.getKey());
+				writeFolder(out, root.getValue(), now);
+			}
+			out.close();
+			out = null;
+
+			snapshotFile.delete();
+			if (!tmp.renameTo(snapshotFile)) {
+				System.err.println("Can't save scan snapshot to " + snapshotFile);
+			}
+		} catch (IOException e) {
+			System.err.println("Can't save scan snapshot:" + e);
+		} finally {
+			close(out);
+		}
+	}
+
+	private static void writeFolder(DataOutputStream out, Folder folder,
+			long now) throws IOException {
+		long mtime = folder.mtime;
+		if (now - mtime < MTIME_GRANULARITY) {
+			mtime = -1; // force listing it again next time.
+		}
+		out.writeLong(mtime);
+		out.writeInt(folder.files.size());
+		for (Map.Entry<String, long[]> file : folder.files.entrySet()) {
+			out.writeUTF(file.getKey());
+			out.writeLong(file.getValue()[0]);
+			out.writeLong(file.getValue()[1]);
+		}
+		out.writeInt(folder.folders.size());
+		for (Map.Entry<String, Folder> sub : folder.folders.entrySet()) {
+			out.writeUTF(sub.getKey());
+			writeFolder(out, sub.getValue(), now);
+		}
+	}
+
+	private static void close(Closeable c) {
+		if (c == null) {
+			return;
+		}
+		try {
+			c.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	private void reportAdded(String filename) {
+		for (Scanner.Listener l : listeners) {
+			try {
+				if (l instanceof Scanner.DiscreteListener) {
+					((Scanner.DiscreteListener) l).fileAdded(filename);
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void reportRemoved(String filename) {
+		for (Scanner.Listener l : listeners) {
+			try {
+				if (l instanceof Scanner.DiscreteListener) {
+					((Scanner.DiscreteListener) l).fileRemoved(filename);
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void reportChanged(String filename) {
+		for (Scanner.Listener l : listeners) {
+			try {
+				if (l instanceof Scanner.DiscreteListener) {
+					((Scanner.DiscreteListener) l).fileChanged(filename);
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void reportBulkChanges(List<String> filenames) {
+		for (Scanner.Listener l : listeners) {
+			try {
+				if (l instanceof Scanner.BulkListener) {
+					((Scanner.BulkListener) l).filesChanged(filenames);
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * A scanned folder , files are name to {size , mtime}.
+	 */
+	private static class Folder {
+		long mtime;
+		Map<String, long[]> files = new HashMap<String, long[]>();
+		Map<String, Folder> folders = new HashMap<String, Folder>();
+		/**
+		 * files are taken from the snapshot , they may be out of date.
+		 */
+		boolean restored = false;
+
+		Folder(long mtime) {
+			this.mtime = mtime;
+		}
+	}
+}
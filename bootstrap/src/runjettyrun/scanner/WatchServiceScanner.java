@@ -0,0 +1,400 @@
+package runjettyrun.scanner;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.mortbay.util.Scanner;
+
+import runjettyrun.RunJettyRunStats;
+
+/**
+ * A scanner based on java.nio.file.WatchService ,
+ * it's notified by the file system instead of walking all the scan folders
+ * every scan interval.
+ *
+ * It deliver the same events as {@link Scanner} to the listeners ,
+ * each folder is reported as added when we start (that's what the first pass
+ * of Scanner does for RJRFileChangeListener), and a bulk change is reported
+ * after every burst of events.
+ *
+ * The files in scan list are watched by their folders , only the events of
+ * the files are reported.
+ *
+ * Note: The bootstrap is still compiled for Java 5, so the NIO2 api is called
+ * by reflection, {@link #isSupported()} is false when running under Java 6 or
+ * older , the caller should fall back to polling {@link Scanner} in that case.
+ *
+ * @author tony
+ */
+public class WatchServiceScanner {
+
+	/**
+	 * how long we wait for more events after the first one of a burst.
+	 */
+	private static final long BURST_MILLIS = 200;
+
+	private static Class<?> pathClass;
+	private static Class<?> watchServiceClass;
+	private static Class<?> watchKeyClass;
+	private static Class<?> watchEventClass;
+	private static Class<?> kindClass;
+
+	private static Object ENTRY_CREATE;
+	private static Object ENTRY_DELETE;
+	private static Object ENTRY_MODIFY;
+	private static Object OVERFLOW;
+
+	private static boolean supported = false;
+
+	static {
+		try {
+			pathClass = Class.forName("java.nio.file.Path");
+			watchServiceClass = Class.forName("java.nio.file.WatchService");
+			watchKeyClass = Class.forName("java.nio.file.WatchKey");
+			watchEventClass = Class.forName("java.nio.file.WatchEvent");
+			kindClass = Class.forName("java.nio.file.WatchEvent$Kind");
+
+			Class<?> kinds = Class.forName("java.nio.file.StandardWatchEventKinds");
+			ENTRY_CREATE = kinds.getField("ENTRY_CREATE").get(null);
+			ENTRY_DELETE = kinds.getField("ENTRY_DELETE").get(null);
+			ENTRY_MODIFY = kinds.getField("ENTRY_MODIFY").get(null);
+			OVERFLOW = kinds.getField("OVERFLOW").get(null);
+			supported = true;
+		} catch (Exception e) {
+			supported = false;
+		}
+	}
+
+	private List<File> scanDirs;
+	private List<Scanner.Listener> listeners = new ArrayList<Scanner.Listener>();
+
+	private Object watchService;
+	private Map<Object, File> keys = new HashMap<Object, File>();
+	/**
+	 * The names of the scan list files in a watched folder , by key , the
+	 * folders watched as a whole are not here.
+	 */
+	private Map<Object, Set<String>> filters = new HashMap<Object, Set<String>>();
+	private Object kinds;
+	private volatile boolean running = false;
+
+	public WatchServiceScanner(List<File> scanDirs) {
+		this.scanDirs = scanDirs;
+	}
+
+	public static boolean isSupported() {
+		return supported;
+	}
+
+	public void addListener(Scanner.Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Register all the scan folders recursively and start watching.
+	 *
+	 * @throws Exception
+	 *             if the file system doesn't support watch service.
+	 */
+	public synchronized void start() throws Exception {
+		if (running) {
+			return;
+		}
+
+		Object fileSystem = Class.forName("java.nio.file.FileSystems")
+				.getMethod("getDefault").invoke(null);
+		watchService = Class.forName("java.nio.file.FileSystem")
+				.getMethod("newWatchService").invoke(fileSystem);
+
+		kinds = Array.newInstance(kindClass, 3);
+		Array.set(kinds, 0, ENTRY_CREATE);
+		Array.set(kinds, 1, ENTRY_DELETE);
+		Array.set(kinds, 2, ENTRY_MODIFY);
+
+		Set<String> folders = new LinkedHashSet<String>();
+		try {
+			for (File dir : scanDirs) {
+				if (dir.isDirectory()) {
+					register(dir, folders, null);
+				} else if (dir.isFile()) {
+					registerFile(dir);
+				}
+			}
+		} catch (Exception e) {
+			close();
+			throw e;
+		}
+
+		// same as the first pass of polling scanner.
+		for (String folder : folders) {
+			reportAdded(folder);
+		}
+		reportBulkChanges(new ArrayList<String>());
+
+		running = true;
+		Thread thread = new Thread("RJR WatchService Scanner") {
+			public void run() {
+				watch();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void stop() {
+		running = false;
+		close();
+	}
+
+	private void close() {
+		try {
+			watchServiceClass.getMethod("close").invoke(watchService);
+		} catch (Exception e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * Register the folder and all sub folders ,
+	 *
+	 * @param folders
+	 *            collect the registered folders.
+	 * @param files
+	 *            collect the files we found , null for skipping files.
+	 */
+	private void register(File dir, Set<String> folders, Set<String> files)
+			throws Exception {
+		Object key = registerKey(dir);
+
+		synchronized (keys) {
+			keys.put(key, dir);
+			filters.remove(key);
+		}
+		folders.add(dir.getPath());
+
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			if (child.isDirectory()) {
+				register(child, folders, files);
+			} else if (files != null) {
+				files.add(child.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Watch the folder of a file in scan list for the file only , unless the
+	 * folder is watched as a whole.
+	 */
+	private void registerFile(File file) throws Exception {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir == null) {
+			return;
+		}
+		Object key = registerKey(dir);
+
+		synchronized (keys) {
+			Set<String> names = filters.get(key);
+			if (names == null) {
+				if (keys.containsKey(key)) {
+					return;
+				}
+				names = new HashSet<String>();
+				filters.put(key, names);
+				keys.put(key, dir);
+			}
+			names.add(file.getName());
+		}
+	}
+
+	/**
+	 * The same key is returned if the folder is already registered.
+	 */
+	private Object registerKey(File dir) throws Exception {
+		Object path = File.class.getMethod("toPath").invoke(dir);
+		Method register = pathClass.getMethod("register", watchServiceClass,
+				kinds.getClass());
+		return register.invoke(path, watchService, kinds);
+	}
+
+	private void watch() {
+		Method take;
+		Method poll;
+		try {
+			take = watchServiceClass.getMethod("take");
+			poll = watchServiceClass.getMethod("poll", long.class, TimeUnit.class);
+		} catch (NoSuchMethodException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		while (running) {
+			try {
+				Object key = take.invoke(watchService);
+
+				long start = System.currentTimeMillis();
+				Set<String> changes = new LinkedHashSet<String>();
+				while (key != null) {
+					handleKey(key, changes);
+					key = poll.invoke(watchService, BURST_MILLIS,
+							TimeUnit.MILLISECONDS);
+				}
+				// only the changed files are touched , no full scan.
+				RunJettyRunStats.getInstance().scanned(
+						System.currentTimeMillis() - start, changes.size(),
+						changes.size());
+
+				reportBulkChanges(new ArrayList<String>(changes));
+			} catch (InvocationTargetException e) {
+				// ClosedWatchServiceException or InterruptedException
+				if (running) {
+					System.err.println("WatchService scanner stopped:"
+							+ e.getTargetException());
+				}
+				return;
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void handleKey(Object key, Set<String> changes) throws Exception {
+		File dir;
+		Set<String> names;
+		synchronized (keys) {
+			dir = keys.get(key);
+			names = filters.get(key);
+		}
+
+		@SuppressWarnings("rawtypes")
+		List events = (List) watchKeyClass.getMethod("pollEvents").invoke(key);
+		for (Object event : events) {
+			Object kind = watchEventClass.getMethod("kind").invoke(event);
+
+			if (kind == OVERFLOW) {
+				// some events are lost , so report all the files in the folder.
+				if (dir != null) {
+					reportOverflow(dir, names, changes);
+				}
+				continue;
+			}
+
+			Object context = watchEventClass.getMethod("context").invoke(event);
+			if (dir == null || context == null
+					|| (names != null && !names.contains(context.toString()))) {
+				continue;
+			}
+
+			File file = new File(dir, context.toString());
+			String filename = file.getPath();
+			changes.add(filename);
+
+			if (kind == ENTRY_CREATE) {
+				if (file.isDirectory()) {
+					Set<String> folders = new LinkedHashSet<String>();
+					Set<String> files = new LinkedHashSet<String>();
+					register(file, folders, files);
+					for (String folder : folders) {
+						reportAdded(folder);
+					}
+					for (String child : files) {
+						reportAdded(child);
+						changes.add(child);
+					}
+				} else {
+					reportAdded(filename);
+				}
+			} else if (kind == ENTRY_DELETE) {
+				reportRemoved(filename);
+			} else if (kind == ENTRY_MODIFY) {
+				reportChanged(filename);
+			}
+		}
+
+		Boolean valid = (Boolean) watchKeyClass.getMethod("reset").invoke(key);
+		if (!valid.booleanValue()) {
+			synchronized (keys) {
+				keys.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * @param names
+	 *            the files we watch in the folder , null for all.
+	 */
+	private void reportOverflow(File dir, Set<String> names, Set<String> changes) {
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			if (child.isFile()
+					&& (names == null || names.contains(child.getName()))) {
+				changes.add(child.getPath());
+				reportChanged(child.getPath());
+			}
+		}
+	}
+
+	private void reportAdded(String filename) {
+		for (Scanner.Listener l : listeners) {
+			try {
+				if (l instanceof Scanner.DiscreteListener) {
+					((Scanner.DiscreteListener) l).fileAdded(filename);
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void reportRemoved(String filename) {
+		for (Scanner.Listener l : listeners) {
+			try {
+				if (l instanceof Scanner.DiscreteListener) {
+					((Scanner.DiscreteListener) l).fileRemoved(filename);
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void reportChanged(String filename) {
+		for (Scanner.Listener l : listeners) {
+			try {
+				if (l instanceof Scanner.DiscreteListener) {
+					((Scanner.DiscreteListener) l).fileChanged(filename);
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void reportBulkChanges(List<String> filenames) {
+		for (Scanner.Listener l : listeners) {
+			try {
+				if (l instanceof Scanner.BulkListener) {
+					((Scanner.BulkListener) l).filesChanged(filenames);
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
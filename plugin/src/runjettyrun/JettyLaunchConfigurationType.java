@@ -43,6 +43,7 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.debug.core.DebugException;
+import org.eclipse.debug.core.DebugPlugin;
 import org.eclipse.debug.core.ILaunch;
 import org.eclipse.debug.core.ILaunchConfiguration;
 import org.eclipse.debug.core.ILaunchConfigurationWorkingCopy;
@@ -61,6 +62,7 @@ import org.eclipse.jdt.launching.JavaRuntime;
 import org.eclipse.jdt.launching.VMRunnerConfiguration;
 import org.eclipse.jdt.launching.sourcelookup.containers.JavaProjectSourceContainer;
 
+import runjettyrun.utils.ClassDataSharingUtil;
 import runjettyrun.utils.ProjectUtil;
 import runjettyrun.utils.RunJettyRunClasspathResolver;
 import runjettyrun.utils.RunJettyRunClasspathUtil;
@@ -77,6 +79,10 @@ public class JettyLaunchConfigurationType extends
 		AbstractJavaLaunchConfigurationDelegate {
 
 	private static HashMap<String, ILaunch> launcher = new HashMap<String, ILaunch>();
+	/**
+	 * The plan each launcher is running , by the same ports.
+	 */
+	private static HashMap<String, LaunchPlan> plans = new HashMap<String, LaunchPlan>();
 	private JettyLaunchConfigurationClassPathProvider provider = new JettyLaunchConfigurationClassPathProvider();
 
 	/**
@@ -305,12 +311,23 @@ public class JettyLaunchConfigurationType extends
 			runtimeVmArgs.add("-XX:MaxPermSize=128m");
 		}
 
+		if (configuration.getAttribute(Plugin.ATTR_ENABLE_HOTSWAP, false)) {
+			String agent = getBootstrapJar(configuration);
+			if (agent != null) {
+				runtimeVmArgs.add("-javaagent:" + agent);
+			}
+		}
+
 		// Here the classpath is really for web app.
 		runtimeVmArgs.add("-Drjrclasspath=" +
 				getWebappClasspath(configuration));
 
 		runtimeVmArgs.add("-Drjrscanlist=" + getScanlist(configuration));
 
+		runtimeVmArgs.add("-Drjrscansnapshot=" + getScanSnapshot(configuration));
+
+		runtimeVmArgs.add("-Drjrworkdir=" + getWorkDir(configuration));
+
 		runtimeVmArgs.add("-DrjrResourceMapping="
 				+ getLinkedResourceMapping(configuration));
 
@@ -324,6 +341,24 @@ public class JettyLaunchConfigurationType extends
 		return runtimeVmArgs.toArray(new String[runtimeVmArgs.size()]);
 	}
 
+	/**
+	 * The bootstrap jar in Jetty classpath , it's used as a java agent to
+	 * redefine the changed classes.
+	 *
+	 * @param configuration
+	 * @return null if the bootstrap jar is not in Jetty classpath.
+	 * @throws CoreException
+	 */
+	private String getBootstrapJar(ILaunchConfiguration configuration)
+			throws CoreException {
+		for (String path : getJettyClasspath(configuration)) {
+			if (new File(path).getName().equals(Plugin.BOOTSTRAP_JAR_NAME)) {
+				return path;
+			}
+		}
+		return null;
+	}
+
 	private String getLinkedResourceInResource(IContainer root,
 			IContainer folder) {
 		StringBuffer sb = new StringBuffer();
@@ -457,11 +492,43 @@ public class JettyLaunchConfigurationType extends
 			monitor.worked(1);
 
 			synchronized (configuration) {
+				// it's taken before the class data sharing arguments are added.
+				LaunchPlan plan = LaunchPlan.of(getVMInstall(configuration),
+						runConfig);
+				if (configuration.getAttribute(Plugin.ATTR_ENABLE_JVM_REUSE, false)
+						&& reloadOldRJRLauncher(configuration, mode, plan)) {
+					// the old launch keeps the process and console.
+					DebugPlugin.getDefault().getLaunchManager().removeLaunch(launch);
+					return;
+				}
 				terminateOldRJRLauncher(configuration, launch);
-				// Launch the configuration - 1 unit of work
-				getVMRunner(configuration, mode)
-						.run(runConfig, launch, monitor);
-				registerRJRLauncher(configuration, launch);
+				// the old one may be the training launch , it's stopped now.
+				List<String> sharing = new ArrayList<String>();
+				if (configuration.getAttribute(
+						Plugin.ATTR_ENABLE_CLASS_DATA_SHARING, false)) {
+					sharing = getClassDataSharing(configuration, runConfig,
+							monitor);
+					List<String> vmArgs = new ArrayList<String>(Arrays
+							.asList(runConfig.getVMArguments()));
+					vmArgs.addAll(sharing);
+					runConfig.setVMArguments(vmArgs.toArray(new String[vmArgs
+							.size()]));
+				}
+				// a standby JVM can't be debugged , it's started without JDWP.
+				boolean standby = !debug
+						&& configuration.getAttribute(Plugin.ATTR_ENABLE_STANDBY_JVM, false);
+				// the standbys are kept by the plan without the class data
+				// sharing arguments , they're not the same for a training launch.
+				if (!standby
+						|| !StandbyPool.getInstance().launch(plan, launch)) {
+					// Launch the configuration - 1 unit of work
+					getVMRunner(configuration, mode)
+							.run(runConfig, launch, monitor);
+				}
+				if (standby) {
+					StandbyPool.getInstance().prepare(plan, sharing);
+				}
+				registerRJRLauncher(configuration, launch, plan);
 			}
 
 			// check for cancellation
@@ -474,6 +541,31 @@ public class JettyLaunchConfigurationType extends
 
 	}
 
+	/**
+	 * The VM arguments to use the AppCDS archive of Jetty classpath , or record
+	 * the class list for it , unless it's given by user.
+	 *
+	 * @param configuration
+	 * @param runConfig
+	 * @param monitor
+	 * @return empty if it's given by user or not supported.
+	 * @throws CoreException
+	 */
+	private List<String> getClassDataSharing(ILaunchConfiguration configuration,
+			VMRunnerConfiguration runConfig, IProgressMonitor monitor)
+			throws CoreException {
+		for (String arg : runConfig.getVMArguments()) {
+			if (arg.startsWith("-Xshare") || arg.startsWith("-XX:SharedArchiveFile")
+					|| arg.startsWith("-XX:DumpLoadedClassList")) {
+				return new ArrayList<String>();
+			}
+		}
+		return ClassDataSharingUtil.getVMArguments(
+				getVMInstall(configuration), runConfig.getClassPath(),
+				Plugin.getDefault().getStateLocation().append(
+						configuration.getName()), monitor);
+	}
+
 	/**
 	 * A private helper to prepare a classpath file to workspace metadata, we
 	 * use this to prevent classpath too long which was caused the problem for
@@ -488,6 +580,64 @@ public class JettyLaunchConfigurationType extends
 		return prepareConfigFile(configuration,classpath,".classpath");
 	}
 
+	/**
+	 * The scanner keeps a snapshot of the scanned folders here between
+	 * launches, so it don't need to stat every file again at startup.
+	 *
+	 * @param configuration
+	 * @return
+	 */
+	private String getScanSnapshot(ILaunchConfiguration configuration) {
+		return Plugin.getDefault().getStateLocation()
+				.append(configuration.getName() + ".scansnapshot").toOSString();
+	}
+
+	/**
+	 * The temp directory of webapp , it's kept between launches so the
+	 * compiled JSPs are reused.
+	 *
+	 * @param configuration
+	 * @return
+	 */
+	public static String getWorkDir(ILaunchConfiguration configuration) {
+		return Plugin.getDefault().getStateLocation()
+				.append(configuration.getName() + ".work").toOSString();
+	}
+
+	/**
+	 * The sessions are kept here between restarts and launches.
+	 *
+	 * @param configuration
+	 * @return
+	 */
+	private String getSessionStore(ILaunchConfiguration configuration) {
+		return Plugin.getDefault().getStateLocation()
+				.append(configuration.getName() + ".sessions").toOSString();
+	}
+
+	/**
+	 * The URLs replayed after restart are kept here between launches.
+	 *
+	 * @param configuration
+	 * @return
+	 */
+	private String getWarmUpFile(ILaunchConfiguration configuration) {
+		return Plugin.getDefault().getStateLocation()
+				.append(configuration.getName() + ".warmup").toOSString();
+	}
+
+	/**
+	 * The classes loaded while the webapp starts are kept here between
+	 * launches.
+	 *
+	 * @param configuration
+	 * @return
+	 */
+	private String getClassOrderFile(ILaunchConfiguration configuration) {
+		return Plugin.getDefault().getStateLocation()
+				.append(configuration.getName() + ".classorder").toOSString();
+	}
+
 	private File prepareConfigFile(ILaunchConfiguration configuration,
 			String content ,String extension) {
 		IPath path = Plugin.getDefault().getStateLocation()
@@ -523,11 +673,54 @@ public class JettyLaunchConfigurationType extends
 		if (!"".equals(port) && launcher.containsKey(port)) {
 			terminateLaunch(launcher.get(port));
 			launcher.remove(port);
+			plans.remove(port);
 		}
 		if (enableSSL && !"".equals(sslPort) && launcher.containsKey(sslPort)) {
 			terminateLaunch(launcher.get(sslPort));
 			launcher.remove(sslPort);
+			plans.remove(sslPort);
+		}
+	}
+
+	/**
+	 * Send the webapp settings to the old Run-Jetty-Run launcher which use
+	 * same port , if it's running the same JVM , Jetty classpath and VM
+	 * arguments in the same mode , it rebuild the webapp without restarting
+	 * the JVM.
+	 *
+	 * @param configuration
+	 * @param mode
+	 * @param plan
+	 * @return false if the old launcher should be terminated and launched
+	 *         again.
+	 * @throws CoreException
+	 */
+	private static boolean reloadOldRJRLauncher(
+			ILaunchConfiguration configuration, String mode, LaunchPlan plan)
+			throws CoreException {
+		String port = configuration.getAttribute(Plugin.ATTR_PORT, "");
+		if (plan == null || "".equals(port)) {
+			return false;
+		}
+		ILaunch old = launcher.get(port);
+		LaunchPlan running = plans.get(port);
+		if (old == null || running == null || old.isTerminated()
+				|| !mode.equals(old.getLaunchMode())
+				|| old.getProcesses().length != 1 || !plan.canReload(running)) {
+			return false;
+		}
+		IProcess process = old.getProcesses()[0];
+		if (process.isTerminated() || process.getStreamsProxy() == null) {
+			return false;
 		}
+		try {
+			process.getStreamsProxy().write(plan.getReloadCommands(running));
+		} catch (IOException e) {
+			Plugin.logError(e);
+			return false;
+		}
+		registerRJRLauncher(configuration, old, plan);
+		return true;
 	}
 
 	private static void terminateLaunch(ILaunch launch) throws DebugException {
@@ -547,19 +740,25 @@ public class JettyLaunchConfigurationType extends
 	 *
 	 * @param configuration
 	 * @param launch
+	 * @param plan
+	 *            null if we can't tell what it's running.
 	 * @throws CoreException
 	 */
 	private static void registerRJRLauncher(ILaunchConfiguration configuration,
-			ILaunch launch) throws CoreException {
+			ILaunch launch, LaunchPlan plan) throws CoreException {
 		String port = configuration.getAttribute(Plugin.ATTR_PORT, "");
 		String sslPort = configuration.getAttribute(Plugin.ATTR_SSL_PORT, "");
 		boolean enableSSL = configuration.getAttribute(Plugin.ATTR_ENABLE_SSL,
 				false);
 
-		if (!"".equals(port))
+		if (!"".equals(port)) {
 			launcher.put(port, launch);
-		if (enableSSL && !"".equals(sslPort))
+			plans.put(port, plan);
+		}
+		if (enableSSL && !"".equals(sslPort)) {
 			launcher.put(sslPort, launch);
+			plans.put(sslPort, plan);
+		}
 	}
 
 	private List<String> getJettyArgs(ILaunchConfiguration configuration,boolean debugMode)
@@ -585,12 +784,24 @@ public class JettyLaunchConfigurationType extends
 		addOptionalAttr(configuration, runtimeVmArgs,
 				Plugin.ATTR_JETTY_XML_PATH, "jettyXMLPath");
 
+		addOptionalAttr(configuration, runtimeVmArgs, Plugin.ATTR_JMX_PORT,
+				"jmxport");
+
 		addOptionalAttr(configuration, runtimeVmArgs,
 				Plugin.ATTR_SCANINTERVALSECONDS, "scanintervalseconds");
 
 		addOptionalAttrx(configuration, runtimeVmArgs,
 				Plugin.ATTR_ENABLE_SCANNER, "enablescanner");
 
+		addOptionalAttr(configuration, runtimeVmArgs,
+				Plugin.ATTR_SCAN_QUIET_PERIOD, "scanquietperiod");
+
+		addOptionalAttr(configuration, runtimeVmArgs,
+				Plugin.ATTR_SCAN_MAX_DELAY, "scanmaxdelay");
+
+		addOptionalAttr(configuration, runtimeVmArgs,
+				Plugin.ATTR_RESTART_HOLD_TIMEOUT, "holdtimeout");
+
 		if(debugMode){
 			addOptionalAttrx(configuration, runtimeVmArgs, Plugin.ATTR_IGNORE_SCAN_CLASS_WHEN_DEBUG_MODE,
 			"ignoreScanClassFile",true);
@@ -609,6 +820,30 @@ public class JettyLaunchConfigurationType extends
 		addOptionalAttrx(configuration, runtimeVmArgs, Plugin.ATTR_ENABLE_JNDI,
 				"enbaleJNDI");
 
+		addOptionalAttrx(configuration, runtimeVmArgs,
+				Plugin.ATTR_ENABLE_TWO_TIER_LOADER, "twotierloader");
+
+		addOptionalAttrx(configuration, runtimeVmArgs,
+				Plugin.ATTR_ENABLE_CONTEXT_SWAP, "swapcontext");
+
+		if (configuration.getAttribute(Plugin.ATTR_ENABLE_SESSION_STORE, false)) {
+			runtimeVmArgs.add("-Drjrsessionstore=" + getSessionStore(configuration));
+		}
+
+		if (configuration.getAttribute(Plugin.ATTR_ENABLE_WARMUP, false)) {
+			runtimeVmArgs.add("-Drjrwarmupfile=" + getWarmUpFile(configuration));
+		}
+
+		addOptionalAttrx(configuration, runtimeVmArgs,
+				Plugin.ATTR_ENABLE_JSP_PRECOMPILE, "precompilejsp");
+
+		addOptionalAttrx(configuration, runtimeVmArgs,
+				Plugin.ATTR_ENABLE_DESCRIPTOR_CACHE, "descriptorcache");
+
+		if (configuration.getAttribute(Plugin.ATTR_ENABLE_CLASS_PREFETCH, false)) {
+			runtimeVmArgs.add("-Drjrclassorder=" + getClassOrderFile(configuration));
+		}
+
 		return runtimeVmArgs;
 	}
 
@@ -0,0 +1,134 @@
+package runjettyrun;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.eclipse.jdt.internal.launching.StandardVMType;
+import org.eclipse.jdt.launching.IVMInstall;
+import org.eclipse.jdt.launching.VMRunnerConfiguration;
+
+/**
+ * The command line of a launch , the rjr system properties (the configs of
+ * Bootstrap) are kept apart from the rest , which is the JVM we need.
+ *
+ * A standby JVM of the same key take the configs after it's started , and a
+ * running JVM of the same key take the configs of webapp on relaunch , see
+ * the "config" and "reload" commands of Bootstrap.
+ *
+ * @author tony
+ */
+class LaunchPlan {
+
+	/**
+	 * The configs a running Bootstrap could take again without restarting the
+	 * JVM , they're only used to build the webapp context and the scanner.
+	 */
+	private static final Set<String> WEBAPP_CONFIGS = new HashSet<String>(
+			Arrays.asList(new String[] { "rjrcontext", "rjrwebapp",
+					"rjrclasspath", "rjrexcludedclasspath", "rjrscanlist",
+					"rjrResourceMapping", "rjrparentloaderpriority",
+					"rjrenbaleJNDI", "rjrtwotierloader" }));
+
+	/**
+	 * The JVM , VM arguments without the configs , classpath , program
+	 * arguments , working directory and environment.
+	 */
+	String key;
+	List<String> command = new ArrayList<String>();
+	Properties configs = new Properties();
+	File workingDirectory;
+	String[] environment;
+
+	/**
+	 * @return null if we can't build the command line by ourself (a boot
+	 *         classpath or VM specific attributes are given).
+	 */
+	static LaunchPlan of(IVMInstall vm, VMRunnerConfiguration config) {
+		if (vm == null || config.getBootClassPath() != null
+				|| (config.getVMSpecificAttributesMap() != null && !config
+						.getVMSpecificAttributesMap().isEmpty())) {
+			return null;
+		}
+		File java = StandardVMType.findJavaExecutable(vm.getInstallLocation());
+		if (java == null) {
+			return null;
+		}
+		LaunchPlan plan = new LaunchPlan();
+		plan.command.add(java.getAbsolutePath());
+		for (String arg : config.getVMArguments()) {
+			if (arg.startsWith("-Drjr")) {
+				int eq = arg.indexOf('=');
+				plan.configs.setProperty(arg.substring(2, eq < 0 ? arg
+						.length() : eq), eq < 0 ? "" : arg.substring(eq + 1));
+			} else {
+				plan.command.add(arg);
+			}
+		}
+		plan.command.add("-cp");
+		plan.command.add(join(config.getClassPath(), File.pathSeparator));
+		plan.command.add(config.getClassToLaunch());
+		for (String arg : config.getProgramArguments()) {
+			plan.command.add(arg);
+		}
+		if (config.getWorkingDirectory() != null) {
+			plan.workingDirectory = new File(config.getWorkingDirectory());
+		}
+		plan.environment = config.getEnvironment();
+		plan.key = plan.command + "|" + plan.workingDirectory + "|"
+				+ join(plan.environment, "|");
+		return plan;
+	}
+
+	/**
+	 * @return true if the running JVM could take this plan by reloading the
+	 *         webapp , only the configs of webapp are different.
+	 */
+	boolean canReload(LaunchPlan running) {
+		return key.equals(running.key)
+				&& getServerConfigs().equals(running.getServerConfigs());
+	}
+
+	/**
+	 * The "config" commands of the webapp configs , the ones not given any
+	 * more are cleared , and "reload".
+	 *
+	 * @param running
+	 *            the plan which the JVM is running now
+	 */
+	String getReloadCommands(LaunchPlan running) {
+		StringBuffer sb = new StringBuffer();
+		for (String name : WEBAPP_CONFIGS) {
+			String value = configs.getProperty(name);
+			if (value != null) {
+				sb.append("config ").append(name).append("=").append(value)
+						.append("\n");
+			} else if (running.configs.getProperty(name) != null) {
+				sb.append("config ").append(name).append("\n");
+			}
+		}
+		sb.append("reload\n");
+		return sb.toString();
+	}
+
+	private Properties getServerConfigs() {
+		Properties server = new Properties();
+		server.putAll(configs);
+		for (String name : WEBAPP_CONFIGS) {
+			server.remove(name);
+		}
+		return server;
+	}
+
+	static String join(String[] values, String separator) {
+		StringBuffer sb = new StringBuffer();
+		for (int i = 0; values != null && i < values.length; ++i) {
+			sb.append(i == 0 ? "" : separator).append(values[i]);
+		}
+		return sb.toString();
+	}
+}
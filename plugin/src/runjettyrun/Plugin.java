@@ -93,6 +93,10 @@ public class Plugin extends AbstractUIPlugin {
 	public static final String ATTR_SSL_PORT = Plugin.PLUGIN_ID
 			+ ".SSL_PORT_ATTR"; //$NON-NLS-1$
 
+	/** configuration attribute for the port of the JMX connector. */
+	public static final String ATTR_JMX_PORT = Plugin.PLUGIN_ID
+			+ ".JMX_PORT_ATTR"; //$NON-NLS-1$
+
 	/** configuration attribute for the location of the keystore. */
 	public static final String ATTR_KEYSTORE = Plugin.PLUGIN_ID
 			+ ".KEYSTORE_ATTR"; //$NON-NLS-1$
@@ -129,6 +133,46 @@ public class Plugin extends AbstractUIPlugin {
 	public static final String ATTR_ENABLE_JNDI = Plugin.PLUGIN_ID
 			+ ".ENABLE_JNDI_ATTR"; //$NON-NLS-1$
 
+	/** configuration attribute for keeping the jars loaded between webapp restarts. */
+	public static final String ATTR_ENABLE_TWO_TIER_LOADER = Plugin.PLUGIN_ID
+			+ ".ENABLE_TWO_TIER_LOADER_ATTR"; //$NON-NLS-1$
+
+	/** configuration attribute for starting a new webapp context before stopping the old one on restart. */
+	public static final String ATTR_ENABLE_CONTEXT_SWAP = Plugin.PLUGIN_ID
+			+ ".ENABLE_CONTEXT_SWAP_ATTR"; //$NON-NLS-1$
+
+	/** configuration attribute for saving the sessions when the webapp is stopped and restoring them. */
+	public static final String ATTR_ENABLE_SESSION_STORE = Plugin.PLUGIN_ID
+			+ ".ENABLE_SESSION_STORE_ATTR"; //$NON-NLS-1$
+
+	/** configuration attribute for replaying the recorded requests after restart. */
+	public static final String ATTR_ENABLE_WARMUP = Plugin.PLUGIN_ID
+			+ ".ENABLE_WARMUP_ATTR"; //$NON-NLS-1$
+
+	/** configuration attribute for compiling the JSPs after the webapp is started. */
+	public static final String ATTR_ENABLE_JSP_PRECOMPILE = Plugin.PLUGIN_ID
+			+ ".ENABLE_JSP_PRECOMPILE_ATTR"; //$NON-NLS-1$
+
+	/** configuration attribute for loading the classes of last start on background threads. */
+	public static final String ATTR_ENABLE_CLASS_PREFETCH = Plugin.PLUGIN_ID
+			+ ".ENABLE_CLASS_PREFETCH_ATTR"; //$NON-NLS-1$
+
+	/** configuration attribute for sharing the classes of Jetty between launches by an AppCDS archive. */
+	public static final String ATTR_ENABLE_CLASS_DATA_SHARING = Plugin.PLUGIN_ID
+			+ ".ENABLE_CLASS_DATA_SHARING_ATTR"; //$NON-NLS-1$
+
+	/** configuration attribute for launching on a standby JVM which is started and warmed up before. */
+	public static final String ATTR_ENABLE_STANDBY_JVM = Plugin.PLUGIN_ID
+			+ ".ENABLE_STANDBY_JVM_ATTR"; //$NON-NLS-1$
+
+	/** configuration attribute for relaunching on the running JVM when only the webapp settings are changed. */
+	public static final String ATTR_ENABLE_JVM_REUSE = Plugin.PLUGIN_ID
+			+ ".ENABLE_JVM_REUSE_ATTR"; //$NON-NLS-1$
+
+	/** configuration attribute for keeping the parsed descriptors and TLDs between restarts. */
+	public static final String ATTR_ENABLE_DESCRIPTOR_CACHE = Plugin.PLUGIN_ID
+			+ ".ENABLE_DESCRIPTOR_CACHE_ATTR"; //$NON-NLS-1$
+
 	public static final String IPROVIDER_ID ="runjettyrun.jetty.providers"; //$NON-NLS-1$
 
 	public static final String ATTR_SHOW_ADVANCE = Plugin.PLUGIN_ID
@@ -157,6 +201,25 @@ public class Plugin extends AbstractUIPlugin {
 	public static final String ATTR_IGNORE_SCAN_CLASS_WHEN_DEBUG_MODE = Plugin.PLUGIN_ID
 	+ ".IGNORE_SCAN_CLASS_WHEN_DEBUG_MODE"; //$NON-NLS-1$
 
+	/** configuration attribute for redefining changed classes in place. */
+	public static final String ATTR_ENABLE_HOTSWAP = Plugin.PLUGIN_ID
+	+ ".ENABLE_HOTSWAP"; //$NON-NLS-1$
+
+	/** configuration attribute for the milliseconds to wait until changes stop before restart. */
+	public static final String ATTR_SCAN_QUIET_PERIOD = Plugin.PLUGIN_ID
+	+ ".SCAN_QUIET_PERIOD"; //$NON-NLS-1$
+
+	/** configuration attribute for the longest milliseconds a restart could be delayed. */
+	public static final String ATTR_SCAN_MAX_DELAY = Plugin.PLUGIN_ID
+	+ ".SCAN_MAX_DELAY"; //$NON-NLS-1$
+
+	/** configuration attribute for the milliseconds a request is held while the webapp is restarting. */
+	public static final String ATTR_RESTART_HOLD_TIMEOUT = Plugin.PLUGIN_ID
+	+ ".RESTART_HOLD_TIMEOUT"; //$NON-NLS-1$
+
+	/** file name of the bootstrap jar , it's also used as the java agent. */
+	public static final String BOOTSTRAP_JAR_NAME = "run-jetty-run-bootstrap.jar"; //$NON-NLS-1$
+
 	// The shared instance
 	private static Plugin plugin;
 
@@ -237,6 +300,7 @@ public class Plugin extends AbstractUIPlugin {
 	}
 
 	public void stop(BundleContext context) throws Exception {
+		StandbyPool.getInstance().shutdown();
 		plugin = null;
 		super.stop(context);
 		extensions.clear();
@@ -0,0 +1,247 @@
+package runjettyrun;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.text.DateFormat;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.ILaunch;
+import org.eclipse.debug.core.model.IProcess;
+
+import runjettyrun.utils.PortUtil;
+
+/**
+ * The JVMs started before they're needed , one for each JVM , classpath and
+ * VM arguments , they load and warm up the classes of Jetty and wait for the
+ * configs of a launch , see runjettyrun.Standby of bootstrap.
+ *
+ * A launch take the standby JVM of the same settings , send it the rjr system
+ * properties and attach its process to the launch , a new one is started in
+ * background for the next launch.
+ *
+ * @author tony
+ */
+public class StandbyPool {
+
+	private static final int MAX_STANDBY = 2;
+
+	/**
+	 * How long we wait a standby JVM which is still warming up.
+	 */
+	private static final int READY_TIMEOUT = 5000;
+
+	/**
+	 * The next standby JVM is started after the webapp of launch is started.
+	 */
+	private static final long SPAWN_DELAY = 10000;
+
+	private static final String KEY = "rjrstandbykey";
+
+	private static final StandbyPool instance = new StandbyPool();
+
+	/**
+	 * By the key of launch plan , the eldest first.
+	 */
+	private Map<String, Standby> standbys = new LinkedHashMap<String, Standby>();
+
+	private StandbyPool() {
+	}
+
+	public static StandbyPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Hand the launch over to a standby JVM of the same settings.
+	 *
+	 * @param plan
+	 *            of the launch , without the class data sharing arguments.
+	 * @return false if there's no standby JVM ready , launch it as usual.
+	 */
+	public boolean launch(LaunchPlan plan, ILaunch launch) {
+		if (plan == null) {
+			return false;
+		}
+		Standby standby;
+		synchronized (this) {
+			standby = standbys.remove(plan.key);
+		}
+		if (standby == null) {
+			return false;
+		}
+		if (!standby.handOver(plan.configs)) {
+			standby.destroy();
+			return false;
+		}
+		String label = MessageFormat.format("{0} ({1})", new Object[] {
+				standby.commandLine[0],
+				DateFormat.getDateTimeInstance(DateFormat.MEDIUM,
+						DateFormat.MEDIUM).format(new Date()) });
+		IProcess process = DebugPlugin.newProcess(launch, standby.process, label);
+		process.setAttribute(IProcess.ATTR_CMDLINE, LaunchPlan.join(standby.commandLine, " "));
+		return true;
+	}
+
+	/**
+	 * Start a standby JVM for the next launch of the same settings , a while
+	 * later in background.
+	 *
+	 * @param plan
+	 *            of the launch , without the class data sharing arguments.
+	 * @param sharing
+	 *            the class data sharing arguments of the launch , a standby
+	 *            JVM use the archive but never record the class list , it's
+	 *            the one of training launch.
+	 */
+	public void prepare(final LaunchPlan plan, List<String> sharing) {
+		if (plan == null) {
+			return;
+		}
+		final List<String> vmArgs = new ArrayList<String>();
+		for (String arg : sharing) {
+			if (!arg.startsWith("-XX:DumpLoadedClassList")) {
+				vmArgs.add(arg);
+			}
+		}
+		Job job = new Job("Starting a standby JVM for Jetty") {
+			protected IStatus run(IProgressMonitor monitor) {
+				spawn(plan, vmArgs);
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.setPriority(Job.DECORATE);
+		job.schedule(SPAWN_DELAY);
+	}
+
+	/**
+	 * Stop all the standby JVMs.
+	 */
+	public synchronized void shutdown() {
+		for (Standby standby : standbys.values()) {
+			standby.destroy();
+		}
+		standbys.clear();
+	}
+
+	private synchronized void spawn(LaunchPlan plan, List<String> vmArgs) {
+		Standby old = standbys.get(plan.key);
+		if (old != null && old.isAlive()) {
+			return;
+		}
+		int port = PortUtil.findAAvailablePort(40000, 60000);
+		if (port < 0) {
+			return;
+		}
+		String key = Long.toHexString(new SecureRandom().nextLong());
+		List<String> command = new ArrayList<String>(plan.command);
+		command.addAll(1, vmArgs);
+		command.add(1, "-Drjrstandby=" + port);
+		command.add(2, "-D" + KEY + "=" + key);
+		String[] commandLine = command.toArray(new String[command.size()]);
+		try {
+			Process process = DebugPlugin.exec(commandLine,
+					plan.workingDirectory, plan.environment);
+			standbys.remove(plan.key);
+			standbys.put(plan.key, new Standby(process, port, key,
+					commandLine));
+		} catch (CoreException e) {
+			Plugin.logError(e);
+			return;
+		}
+		Iterator<Standby> it = standbys.values().iterator();
+		while (standbys.size() > MAX_STANDBY && it.hasNext()) {
+			Standby eldest = it.next();
+			it.remove();
+			eldest.destroy();
+		}
+	}
+
+	private static class Standby {
+		Process process;
+		int port;
+		String key;
+		String[] commandLine;
+
+		Standby(Process process, int port, String key, String[] commandLine) {
+			this.process = process;
+			this.port = port;
+			this.key = key;
+			this.commandLine = commandLine;
+		}
+
+		boolean isAlive() {
+			try {
+				process.exitValue();
+				return false;
+			} catch (IllegalThreadStateException e) {
+				return true;
+			}
+		}
+
+		void destroy() {
+			process.destroy();
+		}
+
+		/**
+		 * Send the configs , wait it if it's still warming up.
+		 */
+		boolean handOver(Properties configs) {
+			long deadline = System.currentTimeMillis() + READY_TIMEOUT;
+			Socket socket = null;
+			while (socket == null) {
+				if (!isAlive() || System.currentTimeMillis() > deadline) {
+					return false;
+				}
+				try {
+					socket = new Socket("127.0.0.1", port);
+				} catch (ConnectException e) {
+					try {
+						Thread.sleep(50);
+					} catch (InterruptedException ie) {
+						return false;
+					}
+				} catch (IOException e) {
+					return false;
+				}
+			}
+			try {
+				Properties payload = new Properties();
+				payload.putAll(configs);
+				payload.setProperty(KEY, key);
+				socket.setSoTimeout(READY_TIMEOUT);
+				payload.store(socket.getOutputStream(), null);
+				socket.shutdownOutput();
+				String reply = new BufferedReader(new InputStreamReader(socket
+						.getInputStream(), "UTF-8")).readLine();
+				return "OK".equals(reply);
+			} catch (IOException e) {
+				Plugin.logError(e);
+				return false;
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+}
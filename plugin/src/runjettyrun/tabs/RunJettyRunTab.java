@@ -42,6 +42,7 @@ import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.debug.ui.launchConfigurations.JavaLaunchTab;
 import org.eclipse.jdt.launching.IJavaLaunchConfigurationConstants;
 import org.eclipse.jdt.ui.JavaElementLabelProvider;
+import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.viewers.ILabelProvider;
 import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
@@ -65,6 +66,7 @@ import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.dialogs.ContainerSelectionDialog;
 import org.eclipse.ui.dialogs.ElementListSelectionDialog;
 
+import runjettyrun.JettyLaunchConfigurationType;
 import runjettyrun.Plugin;
 import runjettyrun.extensions.IJettyPackageProvider;
 import runjettyrun.preferences.PreferenceConstants;
@@ -87,6 +89,8 @@ public class RunJettyRunTab extends JavaLaunchTab {
 
 	private Text fSSLPortText;
 
+	private Text fJmxPortText;
+
 	private Text fKeystoreText;
 
 	private Text fJettyXMLText;
@@ -129,6 +133,28 @@ public class RunJettyRunTab extends JavaLaunchTab {
 
 	private Button fEnableJNDI;
 
+	private Button fEnableTwoTierLoader;
+
+	private Button fEnableContextSwap;
+
+	private Button fEnableSessionStore;
+
+	private Button fEnableWarmUp;
+
+	private Button fEnableJspPrecompile;
+
+	private Button fCleanWorkDirButton;
+
+	private Button fEnableClassPrefetch;
+
+	private Button fEnableClassDataSharing;
+
+	private Button fEnableStandbyJvm;
+
+	private Button fEnableJvmReuse;
+
+	private Button fEnableDescriptorCache;
+
 	/**
 	 * Construct.
 	 */
@@ -494,19 +520,236 @@ public class RunJettyRunTab extends JavaLaunchTab {
 		/*
 		 * ---------------------------------------------------------------------
 		 */
+		fEnableTwoTierLoader = createCheckButton(advanceGroup, "Keep Jars Loaded");
+		fEnableTwoTierLoader.setToolTipText("Only reload project output folders when restarting the webapp, "
+				+ "the jars are loaded by a parent class loader and kept.");
+		{
+			GridData gd = new GridData();
+			gd.horizontalAlignment = SWT.LEFT;
+			fEnableTwoTierLoader.setLayoutData(gd);
+		}
+		// update configuration directly when user select it.
+		fEnableTwoTierLoader.addSelectionListener(new ButtonListener() {
+			public void widgetSelected(SelectionEvent e) {
+				updateLaunchConfigurationDialog();
+			}
+		});
+
+		/*
+		 * ---------------------------------------------------------------------
+		 */
+
 		new Label(advanceGroup, SWT.LEFT).setText("");
 
+
 		/*
 		 * ---------------------------------------------------------------------
 		 */
 
 		new Label(advanceGroup, SWT.LEFT).setText("");
 
+		fEnableContextSwap = createCheckButton(advanceGroup, "Swap Context On Restart");
+		fEnableContextSwap.setToolTipText("Start a new webapp context when restarting, "
+				+ "the old one keeps serving until the new one is started.");
+		{
+			GridData gd = new GridData();
+			gd.horizontalAlignment = SWT.LEFT;
+			fEnableContextSwap.setLayoutData(gd);
+		}
+		// update configuration directly when user select it.
+		fEnableContextSwap.addSelectionListener(new ButtonListener() {
+			public void widgetSelected(SelectionEvent e) {
+				updateLaunchConfigurationDialog();
+			}
+		});
+
+		fEnableSessionStore = createCheckButton(advanceGroup, "Keep Sessions On Restart");
+		fEnableSessionStore.setToolTipText("Save the sessions when the webapp is stopped, "
+				+ "and restore them when it's started again.");
+		{
+			GridData gd = new GridData();
+			gd.horizontalAlignment = SWT.LEFT;
+			gd.horizontalSpan = 3;
+			fEnableSessionStore.setLayoutData(gd);
+		}
+		// update configuration directly when user select it.
+		fEnableSessionStore.addSelectionListener(new ButtonListener() {
+			public void widgetSelected(SelectionEvent e) {
+				updateLaunchConfigurationDialog();
+			}
+		});
 
 		/*
 		 * ---------------------------------------------------------------------
 		 */
 
+		new Label(advanceGroup, SWT.LEFT).setText("JMX Port");
+
+		fJmxPortText = new Text(advanceGroup, SWT.SINGLE | SWT.BORDER);
+		fJmxPortText.setToolTipText("The port of JMX connector, "
+				+ "service:jmx:rmi:///jndi/rmi://localhost:<port>/jmxrmi");
+		fJmxPortText.addModifyListener(_updatedListener);
+		fJmxPortText.setLayoutData(createHFillGridData());
+		fJmxPortText.setFont(font);
+
+		fEnableWarmUp = createCheckButton(advanceGroup, "Warm Up After Restart");
+		fEnableWarmUp.setToolTipText("Record the pages served, and request them again "
+				+ "after every restart before it's reported completed.");
+		{
+			GridData gd = new GridData();
+			gd.horizontalAlignment = SWT.LEFT;
+			gd.horizontalSpan = 3;
+			fEnableWarmUp.setLayoutData(gd);
+		}
+		// update configuration directly when user select it.
+		fEnableWarmUp.addSelectionListener(new ButtonListener() {
+			public void widgetSelected(SelectionEvent e) {
+				updateLaunchConfigurationDialog();
+			}
+		});
+
+		/*
+		 * ---------------------------------------------------------------------
+		 */
+
+		new Label(advanceGroup, SWT.LEFT).setText("");
+
+		fEnableJspPrecompile = createCheckButton(advanceGroup, "Precompile JSPs");
+		fEnableJspPrecompile.setToolTipText("Compile the changed JSPs on a few threads "
+				+ "after the webapp is started, instead of on their first request.");
+		{
+			GridData gd = new GridData();
+			gd.horizontalAlignment = SWT.LEFT;
+			gd.horizontalSpan = 3;
+			fEnableJspPrecompile.setLayoutData(gd);
+		}
+		// update configuration directly when user select it.
+		fEnableJspPrecompile.addSelectionListener(new ButtonListener() {
+			public void widgetSelected(SelectionEvent e) {
+				updateLaunchConfigurationDialog();
+			}
+		});
+
+		fCleanWorkDirButton = createPushButton(advanceGroup, "&Clean Work Dir", null);
+		fCleanWorkDirButton.setToolTipText("Delete the compiled JSPs kept between launches.");
+		fCleanWorkDirButton.addSelectionListener(new ButtonListener() {
+			public void widgetSelected(SelectionEvent e) {
+				cleanWorkDir();
+			}
+		});
+		fCleanWorkDirButton.setLayoutData(new GridData());
+
+		/*
+		 * ---------------------------------------------------------------------
+		 */
+
+		new Label(advanceGroup, SWT.LEFT).setText("");
+
+		fEnableClassPrefetch = createCheckButton(advanceGroup, "Prefetch Classes On Start");
+		fEnableClassPrefetch.setToolTipText("Record the classes loaded while the webapp starts, "
+				+ "and load them on a few threads the next time it starts.");
+		{
+			GridData gd = new GridData();
+			gd.horizontalAlignment = SWT.LEFT;
+			gd.horizontalSpan = 4;
+			fEnableClassPrefetch.setLayoutData(gd);
+		}
+		// update configuration directly when user select it.
+		fEnableClassPrefetch.addSelectionListener(new ButtonListener() {
+			public void widgetSelected(SelectionEvent e) {
+				updateLaunchConfigurationDialog();
+			}
+		});
+
+		/*
+		 * ---------------------------------------------------------------------
+		 */
+
+		new Label(advanceGroup, SWT.LEFT).setText("");
+
+		fEnableClassDataSharing = createCheckButton(advanceGroup, "Share Jetty Classes Between Launches (Java 11+)");
+		fEnableClassDataSharing.setToolTipText("Dump the classes of Jetty to a class data sharing archive "
+				+ "after a training launch, and map them from the archive on the next launches.");
+		{
+			GridData gd = new GridData();
+			gd.horizontalAlignment = SWT.LEFT;
+			gd.horizontalSpan = 4;
+			fEnableClassDataSharing.setLayoutData(gd);
+		}
+		// update configuration directly when user select it.
+		fEnableClassDataSharing.addSelectionListener(new ButtonListener() {
+			public void widgetSelected(SelectionEvent e) {
+				updateLaunchConfigurationDialog();
+			}
+		});
+
+		/*
+		 * ---------------------------------------------------------------------
+		 */
+
+		new Label(advanceGroup, SWT.LEFT).setText("");
+
+		fEnableStandbyJvm = createCheckButton(advanceGroup, "Launch On A Standby JVM");
+		fEnableStandbyJvm.setToolTipText("Keep a JVM with Jetty loaded and warmed up in background, "
+				+ "the next run launch use it instead of starting a new one.");
+		{
+			GridData gd = new GridData();
+			gd.horizontalAlignment = SWT.LEFT;
+			gd.horizontalSpan = 4;
+			fEnableStandbyJvm.setLayoutData(gd);
+		}
+		// update configuration directly when user select it.
+		fEnableStandbyJvm.addSelectionListener(new ButtonListener() {
+			public void widgetSelected(SelectionEvent e) {
+				updateLaunchConfigurationDialog();
+			}
+		});
+
+		/*
+		 * ---------------------------------------------------------------------
+		 */
+
+		new Label(advanceGroup, SWT.LEFT).setText("");
+
+		fEnableJvmReuse = createCheckButton(advanceGroup, "Relaunch On The Running JVM");
+		fEnableJvmReuse.setToolTipText("When only the webapp settings (context, webapp dir, classpath, "
+				+ "scan list or resource mappings) are changed, the running Jetty rebuild the webapp "
+				+ "instead of being terminated and launched again.");
+		{
+			GridData gd = new GridData();
+			gd.horizontalAlignment = SWT.LEFT;
+			gd.horizontalSpan = 4;
+			fEnableJvmReuse.setLayoutData(gd);
+		}
+		// update configuration directly when user select it.
+		fEnableJvmReuse.addSelectionListener(new ButtonListener() {
+			public void widgetSelected(SelectionEvent e) {
+				updateLaunchConfigurationDialog();
+			}
+		});
+
+		/*
+		 * ---------------------------------------------------------------------
+		 */
+
+		new Label(advanceGroup, SWT.LEFT).setText("");
+
+		fEnableDescriptorCache = createCheckButton(advanceGroup, "Cache Parsed Descriptors");
+		fEnableDescriptorCache.setToolTipText("Keep the parsed web.xml, webdefault.xml and TLDs between restarts, "
+				+ "they're only parsed again when they're changed.");
+		{
+			GridData gd = new GridData();
+			gd.horizontalAlignment = SWT.LEFT;
+			gd.horizontalSpan = 4;
+			fEnableDescriptorCache.setLayoutData(gd);
+		}
+		// update configuration directly when user select it.
+		fEnableDescriptorCache.addSelectionListener(new ButtonListener() {
+			public void widgetSelected(SelectionEvent e) {
+				updateLaunchConfigurationDialog();
+			}
+		});
+
 		/*
 		 * ---------------------------------------------------------------------
 		 */
@@ -735,6 +978,8 @@ public class RunJettyRunTab extends JavaLaunchTab {
 
 			fSSLPortText.setText(configuration.getAttribute(
 					Plugin.ATTR_SSL_PORT, ""));
+			fJmxPortText.setText(configuration.getAttribute(
+					Plugin.ATTR_JMX_PORT, ""));
 			fKeystoreText.setText(configuration.getAttribute(
 					Plugin.ATTR_KEYSTORE, ""));
 			fPasswordText.setText(configuration.getAttribute(Plugin.ATTR_PWD,
@@ -758,6 +1003,36 @@ public class RunJettyRunTab extends JavaLaunchTab {
 			fEnableJNDI.setSelection(configuration.getAttribute(
 					Plugin.ATTR_ENABLE_JNDI, false));
 
+			fEnableTwoTierLoader.setSelection(configuration.getAttribute(
+					Plugin.ATTR_ENABLE_TWO_TIER_LOADER, false));
+
+			fEnableContextSwap.setSelection(configuration.getAttribute(
+					Plugin.ATTR_ENABLE_CONTEXT_SWAP, false));
+
+			fEnableSessionStore.setSelection(configuration.getAttribute(
+					Plugin.ATTR_ENABLE_SESSION_STORE, false));
+
+			fEnableWarmUp.setSelection(configuration.getAttribute(
+					Plugin.ATTR_ENABLE_WARMUP, false));
+
+			fEnableJspPrecompile.setSelection(configuration.getAttribute(
+					Plugin.ATTR_ENABLE_JSP_PRECOMPILE, false));
+
+			fEnableClassPrefetch.setSelection(configuration.getAttribute(
+					Plugin.ATTR_ENABLE_CLASS_PREFETCH, false));
+
+			fEnableClassDataSharing.setSelection(configuration.getAttribute(
+					Plugin.ATTR_ENABLE_CLASS_DATA_SHARING, false));
+
+			fEnableStandbyJvm.setSelection(configuration.getAttribute(
+					Plugin.ATTR_ENABLE_STANDBY_JVM, false));
+
+			fEnableJvmReuse.setSelection(configuration.getAttribute(
+					Plugin.ATTR_ENABLE_JVM_REUSE, false));
+
+			fEnableDescriptorCache.setSelection(configuration.getAttribute(
+					Plugin.ATTR_ENABLE_DESCRIPTOR_CACHE, false));
+
 
 			fEnableParentLoadPriorityBox.setSelection(configuration
 					.getAttribute(Plugin.ATTR_ENABLE_PARENT_LOADER_PRIORITY,
@@ -985,6 +1260,8 @@ public class RunJettyRunTab extends JavaLaunchTab {
 			return false;
 		if (isInvalidPort(sslPort))
 			return false;
+		if (isInvalidPort(fJmxPortText.getText().trim()))
+			return false;
 
 
 		if (fEnableSSLbox.getSelection()) {
@@ -1032,6 +1309,8 @@ public class RunJettyRunTab extends JavaLaunchTab {
 		configuration
 				.setAttribute(Plugin.ATTR_SSL_PORT, fSSLPortText.getText());
 
+		configuration.setAttribute(Plugin.ATTR_JMX_PORT, fJmxPortText.getText());
+
 		configuration.setAttribute(Plugin.ATTR_ENABLE_SSL,
 				fEnableSSLbox.getSelection());
 		configuration.setAttribute(Plugin.ATTR_ENABLE_NEED_CLIENT_AUTH,
@@ -1040,6 +1319,36 @@ public class RunJettyRunTab extends JavaLaunchTab {
 		configuration.setAttribute(Plugin.ATTR_ENABLE_JNDI,
 				fEnableJNDI.getSelection());
 
+		configuration.setAttribute(Plugin.ATTR_ENABLE_TWO_TIER_LOADER,
+				fEnableTwoTierLoader.getSelection());
+
+		configuration.setAttribute(Plugin.ATTR_ENABLE_CONTEXT_SWAP,
+				fEnableContextSwap.getSelection());
+
+		configuration.setAttribute(Plugin.ATTR_ENABLE_SESSION_STORE,
+				fEnableSessionStore.getSelection());
+
+		configuration.setAttribute(Plugin.ATTR_ENABLE_WARMUP,
+				fEnableWarmUp.getSelection());
+
+		configuration.setAttribute(Plugin.ATTR_ENABLE_JSP_PRECOMPILE,
+				fEnableJspPrecompile.getSelection());
+
+		configuration.setAttribute(Plugin.ATTR_ENABLE_CLASS_PREFETCH,
+				fEnableClassPrefetch.getSelection());
+
+		configuration.setAttribute(Plugin.ATTR_ENABLE_CLASS_DATA_SHARING,
+				fEnableClassDataSharing.getSelection());
+
+		configuration.setAttribute(Plugin.ATTR_ENABLE_STANDBY_JVM,
+				fEnableStandbyJvm.getSelection());
+
+		configuration.setAttribute(Plugin.ATTR_ENABLE_JVM_REUSE,
+				fEnableJvmReuse.getSelection());
+
+		configuration.setAttribute(Plugin.ATTR_ENABLE_DESCRIPTOR_CACHE,
+				fEnableDescriptorCache.getSelection());
+
 		configuration.setAttribute(Plugin.ATTR_KEYSTORE,
 				fKeystoreText.getText());
 		configuration.setAttribute(Plugin.ATTR_PWD, fPasswordText.getText());
@@ -1227,6 +1536,32 @@ public class RunJettyRunTab extends JavaLaunchTab {
 		}
 	}
 
+	private void cleanWorkDir() {
+		ILaunchConfiguration configuration = getCurrentLaunchConfiguration();
+		if (configuration == null)
+			return;
+
+		File workDir = new File(JettyLaunchConfigurationType.getWorkDir(configuration));
+		if (!workDir.exists())
+			return;
+		if (!MessageDialog.openConfirm(getShell(), "Clean Work Directory",
+				"Delete the compiled JSPs in " + workDir + " ?"))
+			return;
+		if (!delete(workDir))
+			MessageDialog.openWarning(getShell(), "Clean Work Directory",
+					"Some files can't be deleted, stop the webapp and try again.");
+	}
+
+	private static boolean delete(File file) {
+		boolean deleted = true;
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children)
+				deleted &= delete(child);
+		}
+		return file.delete() && deleted;
+	}
+
 	private IWorkspaceRoot getWorkspaceRoot() {
 		return ResourcesPlugin.getWorkspace().getRoot();
 	}
@@ -34,7 +34,11 @@ import runjettyrun.utils.RunJettyRunLaunchConfigurationUtil;
 public class ScanFolderTab extends AbstractClasspathTab {
 	private Button fEnableScannerbox;
 	private Button fEnableIgnoreClassWhenDebugging;
+	private Button fEnableHotSwap;
 	private Text fScanText;
+	private Text fQuietPeriodText;
+	private Text fMaxDelayText;
+	private Text fHoldTimeoutText;
 	private UpdateModfiyListener _updatedListener = new UpdateModfiyListener();
 
 	public ScanFolderTab() {
@@ -63,6 +67,8 @@ public class ScanFolderTab extends AbstractClasspathTab {
 		fEnableScannerbox.addSelectionListener(new SelectionListener() {
 			public void widgetSelected(SelectionEvent e) {
 				fScanText.setEnabled(fEnableScannerbox.getSelection());
+				fQuietPeriodText.setEnabled(fEnableScannerbox.getSelection());
+				fMaxDelayText.setEnabled(fEnableScannerbox.getSelection());
 				updateLaunchConfigurationDialog();
 			}
 
@@ -94,6 +100,17 @@ public class ScanFolderTab extends AbstractClasspathTab {
 		 * ---------------------------------------------------------------------
 		 */
 
+		/*
+		 * Eclipse builder write class files one by one , we wait until they
+		 * stop changing so we don't restart for a half done build.
+		 */
+		fQuietPeriodText = createDelayText(parent, font, "Restart after no changes for");
+		fMaxDelayText = createDelayText(parent, font, "But delay the restart at most");
+		// the webapp is also restarted by console and JMX , it's not a scanner setting.
+		fHoldTimeoutText = createDelayText(parent, font, "Hold requests while restarting for");
+		fHoldTimeoutText.setToolTipText("The requests wait until the webapp is started again, "
+				+ "they're rejected after this long, 0 to not hold them.");
+
 
 		fEnableIgnoreClassWhenDebugging = createCheckButton(parent, "Ignore .class file changes when run in Debug Mode.");
 		fEnableIgnoreClassWhenDebugging.addSelectionListener(new SelectionListener() {
@@ -111,6 +128,22 @@ public class ScanFolderTab extends AbstractClasspathTab {
 			fEnableIgnoreClassWhenDebugging.setLayoutData(data);
 		}
 
+		fEnableHotSwap = createCheckButton(parent, "Redefine changed classes in place instead of restarting when possible.");
+		fEnableHotSwap.addSelectionListener(new SelectionListener() {
+			public void widgetSelected(SelectionEvent e) {
+				updateLaunchConfigurationDialog();
+			}
+			public void widgetDefaultSelected(SelectionEvent e) {
+
+			}
+		});
+		{
+			GridData data = new GridData();
+			data.horizontalSpan =4 ;
+			data.horizontalAlignment = SWT.LEFT;
+			fEnableHotSwap.setLayoutData(data);
+		}
+
 	}
 	public void performApply(ILaunchConfigurationWorkingCopy configuration) {
 		super.performApply(configuration);
@@ -121,7 +154,18 @@ public class ScanFolderTab extends AbstractClasspathTab {
 		configuration.setAttribute(Plugin.ATTR_ENABLE_SCANNER,
 				fEnableScannerbox.getSelection());
 
+		configuration.setAttribute(Plugin.ATTR_SCAN_QUIET_PERIOD,
+				fQuietPeriodText.getText().trim());
+
+		configuration.setAttribute(Plugin.ATTR_SCAN_MAX_DELAY,
+				fMaxDelayText.getText().trim());
+
+		configuration.setAttribute(Plugin.ATTR_RESTART_HOLD_TIMEOUT,
+				fHoldTimeoutText.getText().trim());
+
 		configuration.setAttribute(Plugin.ATTR_IGNORE_SCAN_CLASS_WHEN_DEBUG_MODE, fEnableIgnoreClassWhenDebugging.getSelection());
+
+		configuration.setAttribute(Plugin.ATTR_ENABLE_HOTSWAP, fEnableHotSwap.getSelection());
 	}
 
 	public boolean isValid(ILaunchConfiguration launchConfig) {
@@ -139,7 +183,13 @@ public class ScanFolderTab extends AbstractClasspathTab {
 			}
 			if (isInvalidScan(scan))
 				return false;
+			if (isInvalidDelay(fQuietPeriodText.getText().trim()))
+				return false;
+			if (isInvalidDelay(fMaxDelayText.getText().trim()))
+				return false;
 		}
+		if (isInvalidDelay(fHoldTimeoutText.getText().trim()))
+			return false;
 
 		return true;
 	}
@@ -150,12 +200,22 @@ public class ScanFolderTab extends AbstractClasspathTab {
 		try{
 
 			fEnableIgnoreClassWhenDebugging.setSelection(configuration.getAttribute(Plugin.ATTR_IGNORE_SCAN_CLASS_WHEN_DEBUG_MODE, true));
+			fEnableHotSwap.setSelection(configuration.getAttribute(Plugin.ATTR_ENABLE_HOTSWAP, false));
 			fScanText.setText(configuration.getAttribute(
 					Plugin.ATTR_SCANINTERVALSECONDS, ""));
 
 			fEnableScannerbox.setSelection(configuration.getAttribute(
 					Plugin.ATTR_ENABLE_SCANNER, true));
 			fScanText.setEnabled(fEnableScannerbox.getSelection());
+
+			fQuietPeriodText.setText(configuration.getAttribute(
+					Plugin.ATTR_SCAN_QUIET_PERIOD, ""));
+			fMaxDelayText.setText(configuration.getAttribute(
+					Plugin.ATTR_SCAN_MAX_DELAY, ""));
+			fHoldTimeoutText.setText(configuration.getAttribute(
+					Plugin.ATTR_RESTART_HOLD_TIMEOUT, ""));
+			fQuietPeriodText.setEnabled(fEnableScannerbox.getSelection());
+			fMaxDelayText.setEnabled(fEnableScannerbox.getSelection());
 		} catch (CoreException e) {
 			Plugin.logError(e);
 		}
@@ -186,6 +246,10 @@ public class ScanFolderTab extends AbstractClasspathTab {
 	public void setDefaults(ILaunchConfigurationWorkingCopy configuration) {
 		super.setDefaults(configuration);
 		configuration.setAttribute(Plugin.ATTR_IGNORE_SCAN_CLASS_WHEN_DEBUG_MODE, true);
+		configuration.setAttribute(Plugin.ATTR_ENABLE_HOTSWAP, false);
+		configuration.setAttribute(Plugin.ATTR_SCAN_QUIET_PERIOD, "1000");
+		configuration.setAttribute(Plugin.ATTR_SCAN_MAX_DELAY, "10000");
+		configuration.setAttribute(Plugin.ATTR_RESTART_HOLD_TIMEOUT, "30000");
 
 	}
 
@@ -242,6 +306,37 @@ public class ScanFolderTab extends AbstractClasspathTab {
 	}
 
 
+	/**
+	 * A label , a text for milliseconds and the unit label , take a full row.
+	 */
+	private Text createDelayText(Composite parent, Font font, String label) {
+		Label title = new Label(parent, SWT.LEFT);
+		title.setText(label);
+		title.setLayoutData(createHFillGridData(2, SWT.LEFT));
+
+		Text text = new Text(parent, SWT.SINGLE | SWT.BORDER);
+		text.addModifyListener(_updatedListener);
+		text.setLayoutData(createHFillGridData(1, -1));
+		text.setFont(font);
+		text.setTextLimit(6);
+
+		new Label(parent, SWT.LEFT).setText(" ms");
+		return text;
+	}
+
+	private boolean isInvalidDelay(String s) {
+		if (s.length() == 0)
+			return false;
+		try {
+			if (Integer.parseInt(s) >= 0)
+				return false;
+		} catch (NumberFormatException e) {
+		}
+		setErrorMessage(MessageFormat.format(
+				"Not a valid number of milliseconds: {0}", s));
+		return true;
+	}
+
 	private boolean isInvalidScan(String s) {
 		boolean res = RunJettyRunLaunchConfigurationUtil.isInvalidPort(s);
 		if (res)
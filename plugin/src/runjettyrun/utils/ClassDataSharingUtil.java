@@ -0,0 +1,185 @@
+package runjettyrun.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.internal.launching.StandardVMType;
+import org.eclipse.jdt.launching.IVMInstall;
+import org.eclipse.jdt.launching.IVMInstall2;
+
+import runjettyrun.Plugin;
+
+/**
+ * The class data sharing (AppCDS) archive of Jetty classpath , the JVM map
+ * the classes of Jetty from the archive instead of loading and verifying them
+ * on every launch.
+ *
+ * The first launch after the Jetty classpath or the JVM is changed is the
+ * training launch , it write the classes it loaded to a class list , the next
+ * launch dump the archive from the list and use it until they're changed
+ * again.
+ *
+ * It needs Java 11 or later , and only jars in the Jetty classpath.
+ *
+ * @author tony
+ */
+public class ClassDataSharingUtil {
+
+	private static final int MIN_JAVA_VERSION = 11;
+
+	/**
+	 * @param vm
+	 *            the JVM of launch
+	 * @param classpath
+	 *            the Jetty classpath , in the order it's given to the JVM
+	 * @param base
+	 *            where the files of the launch configuration are kept , the
+	 *            hash of classpath and extension are appended.
+	 * @return the VM arguments to add , empty if the JVM or classpath is not
+	 *         supported.
+	 */
+	public static List<String> getVMArguments(IVMInstall vm,
+			String[] classpath, IPath base, IProgressMonitor monitor) {
+		List<String> args = new ArrayList<String>();
+		if (vm == null || getMajorVersion(vm) < MIN_JAVA_VERSION) {
+			return args;
+		}
+		File java = StandardVMType.findJavaExecutable(vm.getInstallLocation());
+		if (java == null) {
+			return args;
+		}
+		// the JVM refuse to dump the classes in folders.
+		for (String path : classpath) {
+			if (new File(path).isDirectory()) {
+				return args;
+			}
+		}
+
+		String hash = hash(java, vm, classpath);
+		File archive = new File(base.toOSString() + "." + hash + ".jsa");
+		File classList = new File(base.toOSString() + "." + hash + ".classlist");
+		File failed = new File(base.toOSString() + "." + hash + ".failed");
+		if (failed.exists()) {
+			return args;
+		}
+		if (!archive.isFile() && classList.isFile()) {
+			monitor.subTask("Creating class data sharing archive");
+			if (!dump(java, classpath, classList, archive)) {
+				try {
+					failed.createNewFile();
+				} catch (IOException e) {
+					Plugin.logError(e);
+				}
+				return args;
+			}
+		}
+		if (archive.isFile()) {
+			args.add("-XX:SharedArchiveFile=" + archive.getPath());
+			return args;
+		}
+
+		// the classpath or JVM is changed , it's a training launch.
+		clean(base, hash);
+		args.add("-XX:DumpLoadedClassList=" + classList.getPath());
+		return args;
+	}
+
+	/**
+	 * The JVM , the path , time and size of every entry.
+	 */
+	private static String hash(File java, IVMInstall vm, String[] classpath) {
+		StringBuffer sb = new StringBuffer(java.getAbsolutePath());
+		if (vm instanceof IVMInstall2) {
+			sb.append("|").append(((IVMInstall2) vm).getJavaVersion());
+		}
+		for (String path : classpath) {
+			File file = new File(path);
+			sb.append("|").append(path).append("|").append(file.lastModified())
+					.append("|").append(file.length());
+		}
+		return Integer.toHexString(sb.toString().hashCode());
+	}
+
+	/**
+	 * "1.8.0_292" is 8 , "17.0.1" is 17.
+	 */
+	private static int getMajorVersion(IVMInstall vm) {
+		if (!(vm instanceof IVMInstall2)) {
+			return 0;
+		}
+		String version = ((IVMInstall2) vm).getJavaVersion();
+		if (version == null) {
+			return 0;
+		}
+		String[] parts = version.split("[._\\-+]");
+		try {
+			int major = Integer.parseInt(parts[0]);
+			if (major == 1 && parts.length > 1) {
+				major = Integer.parseInt(parts[1]);
+			}
+			return major;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static boolean dump(File java, String[] classpath,
+			File classList, File archive) {
+		StringBuffer cp = new StringBuffer();
+		for (int i = 0; i < classpath.length; ++i) {
+			cp.append(i == 0 ? "" : File.pathSeparator).append(classpath[i]);
+		}
+		ProcessBuilder builder = new ProcessBuilder(java.getAbsolutePath(),
+				"-Xshare:dump", "-XX:SharedClassListFile=" + classList.getPath(),
+				"-XX:SharedArchiveFile=" + archive.getPath(), "-cp", cp.toString());
+		builder.redirectErrorStream(true);
+		StringBuffer output = new StringBuffer();
+		int exit;
+		try {
+			Process process = builder.start();
+			InputStream in = process.getInputStream();
+			byte[] buf = new byte[4096];
+			int len;
+			while ((len = in.read(buf)) != -1) {
+				output.append(new String(buf, 0, len));
+			}
+			in.close();
+			exit = process.waitFor();
+		} catch (Exception e) {
+			Plugin.logError(e);
+			return false;
+		}
+		if (exit != 0 || !archive.isFile()) {
+			Plugin.logError("Can't create the class data sharing archive "
+					+ archive + ":\n" + output);
+			archive.delete();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Delete the files of old classpath.
+	 */
+	private static void clean(IPath base, String hash) {
+		File folder = base.removeLastSegments(1).toFile();
+		Pattern pattern = Pattern.compile(Pattern.quote(base.lastSegment())
+				+ "\\.[0-9a-f]+\\.(jsa|classlist|failed)");
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (pattern.matcher(file.getName()).matches()
+					&& file.getName().indexOf("." + hash + ".") < 0) {
+				file.delete();
+			}
+		}
+	}
+}
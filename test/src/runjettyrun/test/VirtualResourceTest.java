@@ -0,0 +1,221 @@
+package runjettyrun.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.resource.Resource;
+
+import runjettyrun.LinkedResourceCollection;
+import runjettyrun.VirtualResource;
+
+/**
+ * The mapping of linked resource folders (rjrResourceMapping).
+ *
+ * @author tony
+ */
+public class VirtualResourceTest {
+	private File root;
+	private File webapp;
+	private File linked;
+	private File more;
+
+	@Before
+	public void setUp() throws IOException {
+		root = File.createTempFile("rjr", "test");
+		root.delete();
+
+		webapp = new File(root, "webapp");
+		linked = new File(root, "linked");
+		more = new File(root, "more");
+
+		write(new File(webapp, "index.html"), "webapp index");
+		write(new File(webapp, "mytest/shadow.txt"), "webapp shadow");
+		write(new File(webapp, "assets/own.css"), "own");
+		write(new File(linked, "test.txt"), "linked test");
+		write(new File(linked, "mytest/shadow.txt"), "linked shadow");
+		write(new File(linked, "sub/deep.txt"), "deep");
+		write(new File(more, "more.txt"), "more");
+	}
+
+	@After
+	public void tearDown() {
+		delete(root);
+	}
+
+	private VirtualResource virtual(String contextPath, File folder)
+			throws Exception {
+		return new VirtualResource(Resource.newResource(webapp.toURI().toURL()),
+				contextPath, folder.getPath());
+	}
+
+	@Test
+	public void testAddPathInLinkedFolder() throws Exception {
+		VirtualResource vr = virtual("/mytest", linked);
+
+		Resource r = vr.addPath("/mytest/test.txt");
+		assertTrue(r.exists());
+		assertEquals(new File(linked, "test.txt").getCanonicalFile(), r.getFile()
+				.getCanonicalFile());
+
+		assertTrue(vr.addPath("mytest/sub/deep.txt").exists());
+		assertFalse(vr.addPath("/mytest/missing.txt").exists());
+	}
+
+	@Test
+	public void testAddPathOfMappingRoot() throws Exception {
+		VirtualResource vr = virtual("/mytest", linked);
+
+		Resource r = vr.addPath("/mytest");
+		assertTrue(r.exists());
+		assertTrue(r.isDirectory());
+		assertTrue(Arrays.asList(r.list()).contains("test.txt"));
+
+		assertTrue(vr.addPath("/mytest/").isDirectory());
+	}
+
+	@Test
+	public void testAddPathOutsideContextPath() throws Exception {
+		VirtualResource vr = virtual("/mytest", linked);
+
+		// same prefix , but not the same folder.
+		Resource r = vr.addPath("/mytestx/test.txt");
+		assertFalse(r.exists());
+
+		r = vr.addPath("/index.html");
+		assertTrue(r.exists());
+		assertEquals("webapp index", read(r));
+	}
+
+	@Test
+	public void testDelegation() throws Exception {
+		VirtualResource vr = virtual("/mytest", linked);
+
+		assertTrue(vr.exists());
+		assertTrue(vr.isDirectory());
+		assertEquals(linked.getCanonicalFile(), vr.getFile().getCanonicalFile());
+		assertEquals(linked.lastModified(), vr.lastModified());
+		assertEquals(linked.toURI().toURL().toString(), vr.getURL().toString());
+
+		Resource file = vr.addPath("/mytest/test.txt");
+		assertEquals("linked test".length(), file.length());
+		assertEquals("linked test", read(file));
+	}
+
+	@Test
+	public void testListAsWebappRoot() throws Exception {
+		assertArrayEquals(new String[] { "mytest/" },
+				virtual("/mytest", linked).list());
+		assertArrayEquals(new String[] { "a/" },
+				virtual("/a/b", linked).list());
+		assertArrayEquals(new String[0],
+				virtual("/mytest", new File(root, "missing")).list());
+	}
+
+	@Test
+	public void testLinkedCollection() throws Exception {
+		Map<String, String> mapping = new LinkedHashMap<String, String>();
+		mapping.put("/mytest", linked.getPath());
+		mapping.put("mytest/more", more.getPath());
+		mapping.put("/assets", linked.getPath());
+		LinkedResourceCollection collection = new LinkedResourceCollection(
+				Resource.newResource(webapp.toURI().toURL()), mapping);
+
+		assertSame(collection, collection.addPath("/"));
+		assertTrue(Arrays.asList(collection.list()).contains("mytest/"));
+		assertTrue(Arrays.asList(collection.list()).contains("index.html"));
+
+		assertEquals("linked test", read(collection.addPath("/mytest/test.txt")));
+		// the longest prefix wins.
+		assertEquals("more", read(collection.addPath("/mytest/more/more.txt")));
+		// the webapp wins if both have it.
+		assertEquals("webapp shadow",
+				read(collection.addPath("/mytest/shadow.txt")));
+		assertFalse(collection.addPath("/mytestx/test.txt").exists());
+		assertNull(collection.findLinked("/mytestx/test.txt"));
+
+		// folders in both are merged.
+		Resource assets = collection.addPath("/assets/");
+		assertTrue(assets.isDirectory());
+		assertTrue(Arrays.asList(assets.list()).contains("own.css"));
+		assertTrue(Arrays.asList(assets.list()).contains("test.txt"));
+	}
+
+	@Test
+	public void testResolvedPathCache() throws Exception {
+		Map<String, String> mapping = new LinkedHashMap<String, String>();
+		mapping.put("/mytest", linked.getPath());
+		LinkedResourceCollection collection = new LinkedResourceCollection(
+				Resource.newResource(webapp.toURI().toURL()), mapping);
+		collection.setCacheTTL(60000);
+
+		assertFalse(collection.addPath("/mytest/new.txt").exists());
+		write(new File(linked, "new.txt"), "new");
+		// the miss is kept until the cache is flushed.
+		assertFalse(collection.addPath("/mytest/new.txt").exists());
+
+		collection.flushCache();
+		Resource r = collection.addPath("/mytest/new.txt");
+		assertTrue(r.exists());
+		assertEquals("new", read(r));
+		assertSame(r, collection.addPath("/mytest/new.txt"));
+
+		// so are the time and size of a changed file.
+		long lastModified = r.lastModified();
+		write(new File(linked, "new.txt"), "newer");
+		assertEquals(3, collection.addPath("/mytest/new.txt").length());
+		assertEquals(lastModified, collection.addPath("/mytest/new.txt")
+				.lastModified());
+
+		collection.flushCache();
+		assertEquals(5, collection.addPath("/mytest/new.txt").length());
+	}
+
+	private static String read(Resource r) throws IOException {
+		InputStream in = r.getInputStream();
+		try {
+			StringBuffer sb = new StringBuffer();
+			int c;
+			while ((c = in.read()) != -1) {
+				sb.append((char) c);
+			}
+			return sb.toString();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}